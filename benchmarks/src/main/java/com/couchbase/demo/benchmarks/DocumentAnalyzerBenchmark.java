@@ -0,0 +1,60 @@
+package com.couchbase.demo.benchmarks;
+
+import com.couchbase.demo.analysis.AnalyzerProperties;
+import com.couchbase.demo.analysis.DocumentAnalyzer;
+import com.couchbase.demo.analysis.DocumentParser;
+import com.couchbase.demo.binaries.SearchableBinary;
+import com.couchbase.demo.upload.FileUpload;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full analysis of one spooled upload: type detection, Tika parse and metadata conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DocumentAnalyzerBenchmark {
+
+    @Param({"sample.pdf", "sample2.pdf", "CouchbaseKubernetesOnGKE.pdf", "Lab 6 - Analytics.docx", "Architecture-upgrade.pptx",
+            Fixtures.GENERATED_SPREADSHEET})
+    public String file;
+
+    private ExecutorService parserExecutor;
+    private DocumentParser parser;
+    private DocumentAnalyzer analyzer;
+    private FileUpload upload;
+
+    @Setup
+    public void setUp() throws IOException {
+        parserExecutor = Executors.newCachedThreadPool();
+        parser = Fixtures.newParser(parserExecutor);
+        analyzer = new DocumentAnalyzer(parser, parserExecutor, new AnalyzerProperties());
+        try (InputStream in = Files.newInputStream(Fixtures.sample(file))) {
+            upload = FileUpload.from(file, in);
+        }
+    }
+
+    @Benchmark
+    public SearchableBinary analyze() {
+        SearchableBinary doc = analyzer.analyze(upload);
+        doc.releaseText();
+        return doc;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        upload.close();
+        parser.close();
+        parserExecutor.shutdownNow();
+    }
+}
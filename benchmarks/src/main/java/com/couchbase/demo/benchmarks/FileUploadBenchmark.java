@@ -0,0 +1,39 @@
+package com.couchbase.demo.benchmarks;
+
+import com.couchbase.demo.upload.FileUpload;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spooling an upload to its temporary file while hashing it, then releasing it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileUploadBenchmark {
+
+    @Param({"16384", "1048576", "16777216"})
+    public int size;
+
+    private byte[] content;
+
+    @Setup
+    public void setUp() {
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+    }
+
+    @Benchmark
+    public String from() throws IOException {
+        try (FileUpload upload = FileUpload.from("benchmark.bin", new ByteArrayInputStream(content))) {
+            return upload.getContentHash();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.couchbase.demo.benchmarks;
+
+import com.couchbase.demo.analysis.AnalyzerProperties;
+import com.couchbase.demo.analysis.DocumentParser;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.parser.AutoDetectParser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+/**
+ * Sample files and analysis components built the same way as the application configuration, without Spring.
+ */
+final class Fixtures {
+    /**
+     * Comma separated folders the sample files are looked up in
+     */
+    static final String FOLDERS_PROPERTY = "benchmarks.samples";
+    static final String GENERATED_SPREADSHEET = "generated.xls";
+    private static final String DEFAULT_FOLDERS = "samples,cb-upload-fts/upload-dir,../samples,../cb-upload-fts/upload-dir";
+
+    private Fixtures() {
+    }
+
+    static DocumentParser newParser(ExecutorService parserExecutor) {
+        TikaConfig tikaConfig = TikaConfig.getDefaultConfig();
+        return new DocumentParser(tikaConfig.getMimeRepository(), new AutoDetectParser(tikaConfig), parserExecutor,
+                new AnalyzerProperties());
+    }
+
+    /**
+     * Finds the sample file by name, ignoring leading and trailing spaces, or generates it for {@value GENERATED_SPREADSHEET}.
+     */
+    static Path sample(String name) throws IOException {
+        if (GENERATED_SPREADSHEET.equals(name)) {
+            return spreadsheet(2_000);
+        }
+        List<String> folders = Arrays.asList(System.getProperty(FOLDERS_PROPERTY, DEFAULT_FOLDERS).split(","));
+        for (String folder : folders) {
+            Path dir = Paths.get(folder.trim());
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                Optional<Path> found = files.filter(file -> file.getFileName().toString().trim().equals(name)).findFirst();
+                if (found.isPresent()) {
+                    return found.get();
+                }
+            }
+        }
+        throw new IllegalStateException("Sample " + name + " not found in " + folders + ", run from the project root or set -D" + FOLDERS_PROPERTY);
+    }
+
+    /**
+     * An XLS workbook with the given number of rows of mixed text and numbers, deleted on exit.
+     */
+    static Path spreadsheet(int rows) throws IOException {
+        Path file = Files.createTempFile("benchmark-", ".xls");
+        file.toFile().deleteOnExit();
+        try (HSSFWorkbook workbook = new HSSFWorkbook(); OutputStream out = Files.newOutputStream(file)) {
+            workbook.createInformationProperties(); // Office always writes the summary streams
+            workbook.getSummaryInformation().setAuthor("benchmarks");
+            Sheet sheet = workbook.createSheet("results");
+            for (int i = 0; i < rows; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("document-" + i);
+                row.createCell(1).setCellValue("Couchbase full text search result number " + i);
+                row.createCell(2).setCellValue(i * 1.5);
+                row.createCell(3).setCellValue(i % 7 == 0 ? "pdf" : "docx");
+            }
+            workbook.write(out);
+        }
+        return file;
+    }
+}
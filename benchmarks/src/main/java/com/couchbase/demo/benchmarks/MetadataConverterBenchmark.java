@@ -0,0 +1,49 @@
+package com.couchbase.demo.benchmarks;
+
+import com.couchbase.demo.analysis.DocumentParser;
+import com.couchbase.demo.analysis.MetadataConverter;
+import com.couchbase.demo.binaries.SearchableBinary;
+import org.apache.tika.metadata.Metadata;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of the metadata Tika extracted from real documents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataConverterBenchmark {
+
+    @Param({"sample.pdf", "CouchbaseKubernetesOnGKE.pdf", "Lab 6 - Analytics.docx", "Architecture-upgrade.pptx"})
+    public String file;
+
+    private final MetadataConverter converter = new MetadataConverter();
+    private Metadata metadata;
+
+    @Setup
+    public void setUp() throws IOException {
+        ExecutorService parserExecutor = Executors.newSingleThreadExecutor();
+        DocumentParser parser = Fixtures.newParser(parserExecutor);
+        try {
+            metadata = new Metadata();
+            metadata.set(Metadata.RESOURCE_NAME_KEY, file);
+            parser.parse(Fixtures.sample(file), metadata);
+        } finally {
+            parser.close();
+            parserExecutor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public SearchableBinary.Metadata from() {
+        return converter.from(metadata);
+    }
+}
@@ -0,0 +1,56 @@
+package com.couchbase.demo.benchmarks;
+
+import com.couchbase.client.java.search.result.SearchQueryResult;
+import com.couchbase.client.java.search.result.SearchQueryRow;
+import com.couchbase.client.java.search.result.impl.DefaultSearchMetrics;
+import com.couchbase.client.java.search.result.impl.DefaultSearchQueryResult;
+import com.couchbase.client.java.search.result.impl.DefaultSearchQueryRow;
+import com.couchbase.client.java.search.result.impl.DefaultSearchStatus;
+import com.couchbase.demo.binaries.SearchResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of FTS results shaped like the ones of the binarySearch index: stored fields and body highlights.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchResultBenchmark {
+
+    @Param({"10", "100"})
+    public int hits;
+
+    private SearchQueryResult result;
+
+    @Setup
+    public void setUp() {
+        List<SearchQueryRow> rows = new ArrayList<>(hits);
+        for (int i = 0; i < hits; i++) {
+            Map<String, String> fields = new HashMap<>();
+            fields.put("registeredAt", String.valueOf(1_580_000_000_000L + i));
+            fields.put("reference", "document-" + i + ".pdf");
+            fields.put("docType", "application/pdf");
+            fields.put("metadata.author", "author " + i);
+            fields.put("metadata.createdAt", "2020-01-" + (10 + i % 20) + "T10:00:00Z");
+            fields.put("metadata.keywords", "couchbase, search, binary");
+            fields.put("thumbnail", "pdf.jpg");
+            Map<String, List<String>> fragments = Map.of("body", List.of(
+                    "Couchbase <mark>Full Text Search</mark> indexes the content of binary documents",
+                    "extracted with Apache Tika, <mark>search</mark> result number " + i));
+            rows.add(new DefaultSearchQueryRow("binarySearch", "searchable:" + i, 1.0 / (i + 1), null, null, fragments, fields));
+        }
+        result = new DefaultSearchQueryResult(new DefaultSearchStatus(1, 0, 1), rows, null, Collections.emptyMap(),
+                new DefaultSearchMetrics(5, hits * 10L, 1.0));
+    }
+
+    @Benchmark
+    public SearchResult from() {
+        return SearchResult.from(result);
+    }
+}
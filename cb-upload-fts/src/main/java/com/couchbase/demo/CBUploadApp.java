@@ -1,12 +1,23 @@
 package com.couchbase.demo;
 
+import com.couchbase.demo.analysis.AnalyzerProperties;
+import com.couchbase.demo.binaries.SearchProperties;
+import com.couchbase.demo.ingest.IngestionProperties;
+import com.couchbase.demo.loadtest.LoadTestProperties;
+import com.couchbase.demo.metrics.InstrumentationProperties;
+import com.couchbase.demo.offline.OfflineProperties;
+import com.couchbase.demo.reindex.ReindexProperties;
 import com.couchbase.demo.storage.StorageProperties;
+import com.couchbase.demo.thumbnail.ThumbnailProperties;
+import com.couchbase.demo.upload.ResumableUploadProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
-@EnableConfigurationProperties(StorageProperties.class)
+@EnableConfigurationProperties({StorageProperties.class, IngestionProperties.class, AnalyzerProperties.class, SearchProperties.class, ThumbnailProperties.class,
+        InstrumentationProperties.class, ResumableUploadProperties.class, ReindexProperties.class,
+        OfflineProperties.class, LoadTestProperties.class})
 public class CBUploadApp {
     public static void main(String[] args) {
         SpringApplication.run(CBUploadApp.class, args);
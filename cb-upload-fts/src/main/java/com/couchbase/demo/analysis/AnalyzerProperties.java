@@ -0,0 +1,207 @@
+package com.couchbase.demo.analysis;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties("analyzer")
+public class AnalyzerProperties {
+
+    /**
+     * Number of threads parsing documents in parallel (bulk loads, embedded documents...)
+     */
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of Tika parses allowed to run at the same time
+     */
+    private int parserThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum time spent parsing a single document
+     */
+    private Duration timeout = Duration.ofSeconds(60);
+
+    /**
+     * Maximum number of characters extracted from a document, -1 for no limit
+     */
+    private int maxCharacters = 5_000_000;
+
+    /**
+     * Number of extracted characters kept on heap per document, longer texts are spilled to a temporary file
+     * until the document is written
+     */
+    private int memoryThreshold = 1_000_000;
+
+    /**
+     * Extraction of embedded documents as documents of their own
+     */
+    private final Embedded embedded = new Embedded();
+
+    /**
+     * Parsing in separate JVMs
+     */
+    private final Fork fork = new Fork();
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getMaxCharacters() {
+        return maxCharacters;
+    }
+
+    public void setMaxCharacters(int maxCharacters) {
+        this.maxCharacters = maxCharacters;
+    }
+
+    public int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    public void setMemoryThreshold(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    public Embedded getEmbedded() {
+        return embedded;
+    }
+
+    public Fork getFork() {
+        return fork;
+    }
+
+    public static class Embedded {
+
+        /**
+         * Whether embedded resources (attachments, embedded spreadsheets, archive entries...) are indexed as
+         * child documents linked to their parent, parsed in parallel on the analysis pool, instead of being
+         * appended to the body of their parent. Not applied with forked parsers
+         */
+        private boolean enabled = false;
+
+        /**
+         * Nesting levels extracted below the uploaded document, deeper resources are skipped
+         */
+        private int maxDepth = 2;
+
+        /**
+         * Resources extracted from one upload at all levels, the next ones are skipped
+         */
+        private int maxCount = 100;
+
+        /**
+         * Size of one resource, a larger one is skipped as soon as its spool reaches it
+         */
+        private DataSize maxResourceSize = DataSize.ofMegabytes(50);
+
+        /**
+         * Size of all the resources spooled from one upload at all levels, bounding the temporary disk it takes
+         */
+        private DataSize maxTotalSize = DataSize.ofMegabytes(200);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public void setMaxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+
+        public int getMaxCount() {
+            return maxCount;
+        }
+
+        public void setMaxCount(int maxCount) {
+            this.maxCount = maxCount;
+        }
+
+        public DataSize getMaxResourceSize() {
+            return maxResourceSize;
+        }
+
+        public void setMaxResourceSize(DataSize maxResourceSize) {
+            this.maxResourceSize = maxResourceSize;
+        }
+
+        public DataSize getMaxTotalSize() {
+            return maxTotalSize;
+        }
+
+        public void setMaxTotalSize(DataSize maxTotalSize) {
+            this.maxTotalSize = maxTotalSize;
+        }
+    }
+
+    public static class Fork {
+
+        /**
+         * Whether documents are parsed in forked JVMs, isolating the application from crashing or runaway parsers
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of forked parser JVMs kept alive
+         */
+        private int poolSize = 2;
+
+        /**
+         * Command used to start the forked JVMs, the executable then each argument
+         */
+        private List<String> javaCommand = List.of("java", "-Xmx512m");
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public List<String> getJavaCommand() {
+            return javaCommand;
+        }
+
+        public void setJavaCommand(List<String> javaCommand) {
+            this.javaCommand = javaCommand;
+        }
+    }
+}
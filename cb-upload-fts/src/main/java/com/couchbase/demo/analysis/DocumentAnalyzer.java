@@ -1,57 +1,160 @@
 package com.couchbase.demo.analysis;
 
 import com.couchbase.demo.binaries.SearchableBinary;
+import com.couchbase.demo.metrics.IngestTrace;
 import com.couchbase.demo.upload.FileUpload;
-import org.apache.tika.Tika;
-import org.apache.tika.exception.TikaException;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import org.xml.sax.ContentHandler;
 
 import java.io.IOException;
-import java.util.Date;
-import java.util.Objects;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
 
 @Component
 public class DocumentAnalyzer {
     private final Logger LOGGER = LoggerFactory.getLogger(DocumentAnalyzer.class);
 
+    /**
+     * Drops the embedded resources below the maximum depth
+     */
+    private static final EmbeddedDocumentExtractor SKIP_EMBEDDED = new EmbeddedDocumentExtractor() {
+        @Override
+        public boolean shouldParseEmbedded(Metadata metadata) {
+            return false;
+        }
+
+        @Override
+        public void parseEmbedded(InputStream stream, ContentHandler handler, Metadata metadata, boolean outputHtml) {
+        }
+    };
+
     private MetadataConverter converter = new MetadataConverter();
-    private final Tika analyzer;
+    private final DocumentParser parser;
+    private final ExecutorService analysisExecutor;
+    private final AnalyzerProperties.Embedded embedded;
 
     @Autowired
-    public DocumentAnalyzer(Tika analyzer) {
-        this.analyzer = analyzer;
+    public DocumentAnalyzer(DocumentParser parser, @Qualifier("analysisExecutor") ExecutorService analysisExecutor,
+                            AnalyzerProperties properties) {
+        this.parser = parser;
+        this.analysisExecutor = analysisExecutor;
+        this.embedded = properties.getEmbedded();
     }
 
     public SearchableBinary analyze(FileUpload fileUpload) {
         return analyze(new Metadata(), fileUpload);
     }
 
+    /**
+     * With {@code analyzer.embedded.enabled}, the documents embedded in this one are analyzed too, in parallel,
+     * and returned as its {@code parts}.
+     */
     public SearchableBinary analyze(Metadata metadata, FileUpload fileUpload) {
-        SearchableBinary doc;
+        return analyze(metadata, fileUpload, 0, new EmbeddedSpooler.Budget(embedded.getMaxCount(), embedded.getMaxTotalSize().toBytes()));
+    }
+
+    private SearchableBinary analyze(Metadata metadata, FileUpload fileUpload, int depth, EmbeddedSpooler.Budget budget) {
+        metadata.set(Metadata.RESOURCE_NAME_KEY, fileUpload.getFilename());
+        IngestTrace trace = fileUpload.getTrace();
+        EmbeddedSpooler spooler = embedded.isEnabled() && depth < embedded.getMaxDepth()
+                ? new EmbeddedSpooler(fileUpload.getFilename(), budget, embedded.getMaxResourceSize().toBytes()) : null;
+        EmbeddedDocumentExtractor extractor = embedded.isEnabled() && spooler == null ? SKIP_EMBEDDED : spooler;
+        ExtractedText text;
         try {
-            String content = analyzer.parseToString(fileUpload.getSearchContentStream(), metadata);
+            text = trace.time(IngestTrace.PARSE, () -> parser.parse(fileUpload.getContent(), metadata, extractor));
+        } catch (RuntimeException e) {
+            if (spooler != null) {
+                spooler.getSpooled().forEach(DocumentAnalyzer::closeQuietly);
+            }
+            throw e;
+        }
+        String docType = extractDocType(metadata);
+        trace.setDocType(docType);
+        trace.setExtractedCharacters(text.length());
 
-            doc = SearchableBinary.builder()
-                    .id(SearchableBinary.PREFIX_TYPE.concat(":").concat(fileUpload.getId()))
-                    .docType(extractDocType(metadata))
-                    .metadata(converter.from(metadata))
-                    .body(content)
-                    .thumbnail("pdf.jpg") // TODO extract thumbnail from first page
-                    .registeredAt(new Date())
-                    .reference(fileUpload.getFilename())
-                    .build();
+        SearchableBinary doc = SearchableBinary.builder()
+                .id(SearchableBinary.idOf(fileUpload.getContentHash()))
+                .contentHash(fileUpload.getContentHash())
+                .docType(docType)
+                .metadata(trace.time(IngestTrace.METADATA, () -> converter.from(metadata)))
+                .text(text)
+                .truncated(text.isTruncated())
+                .thumbnail("pdf.jpg") // placeholder, the first page is rendered in background by ThumbnailService
+                .registeredAt(new Date())
+                .reference(fileUpload.getFilename())
+                .references(new ArrayList<>(List.of(fileUpload.getFilename())))
+                .build();
+        if (spooler != null && !spooler.getSpooled().isEmpty()) {
+            List<SearchableBinary> parts = analyzeParts(doc, spooler.getSpooled(), depth + 1, budget);
+            doc.setParts(parts);
+            doc.setEmbedded(parts.stream().map(SearchableBinary::getId).distinct().collect(Collectors.toList()));
+        }
+        if (spooler != null && spooler.getSkipped() > 0) {
+            LOGGER.warn("{} embedded resources of {} skipped, over the analyzer.embedded limits", spooler.getSkipped(), fileUpload.getFilename());
+        }
+        return doc;
+    }
 
-            return doc;
-        } catch (TikaException | IOException ex) {
-            LOGGER.error("{} analyzing input stream",ex.getClass().getSimpleName(), ex);
-            //TODO handle exception
-            throw new RuntimeException(ex);
+    /**
+     * Analyzes the embedded resources on the analysis pool. The calling thread, which may itself be one of the
+     * pool, runs the analyses not started yet instead of only waiting for them, so nested documents can't
+     * exhaust the pool. A resource which can't be analyzed, or holds no text nor parts, is left out.
+     */
+    private List<SearchableBinary> analyzeParts(SearchableBinary parent, List<FileUpload> uploads, int depth, EmbeddedSpooler.Budget budget) {
+        List<FutureTask<SearchableBinary>> analyses = new ArrayList<>(uploads.size());
+        for (FileUpload upload : uploads) {
+            FutureTask<SearchableBinary> analysis = new FutureTask<>(() -> {
+                try (upload) {
+                    return analyze(new Metadata(), upload, depth, budget);
+                }
+            });
+            analyses.add(analysis);
+            analysisExecutor.execute(analysis);
+        }
+        List<SearchableBinary> parts = new ArrayList<>(uploads.size());
+        for (int i = 0; i < analyses.size(); i++) {
+            FutureTask<SearchableBinary> analysis = analyses.get(i);
+            analysis.run();
+            try {
+                SearchableBinary part = analysis.get();
+                if (part.getText().length() == 0 && part.allParts().isEmpty()) {
+                    part.releaseText();
+                    continue;
+                }
+                part.setParentId(parent.getId());
+                inheritReferences(part, parent);
+                part.allParts().forEach(nested -> inheritReferences(nested, parent));
+                parts.add(part);
+            } catch (ExecutionException e) {
+                LOGGER.warn("Could not analyze {} embedded in {}", uploads.get(i).getFilename(), parent.getReference(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                analyses.forEach(pending -> pending.cancel(true));
+                uploads.forEach(DocumentAnalyzer::closeQuietly);
+                parts.forEach(SearchableBinary::releaseText);
+                throw new AnalysisException("Interrupted analyzing the documents embedded in " + parent.getReference(), e);
+            }
         }
+        return parts;
+    }
+
+    /**
+     * The uploaded file is the one stored, downloaded and rendered for the parts at every depth.
+     */
+    private static void inheritReferences(SearchableBinary part, SearchableBinary parent) {
+        part.setReference(parent.getReference());
+        part.setReferences(new ArrayList<>(parent.getReferences()));
     }
 
     private String extractDocType(Metadata metadata) {
@@ -60,4 +163,12 @@ public class DocumentAnalyzer {
 
     }
 
+    private static void closeQuietly(FileUpload upload) {
+        try {
+            upload.close();
+        } catch (IOException e) {
+            upload.getContent().toFile().deleteOnExit();
+        }
+    }
+
 }
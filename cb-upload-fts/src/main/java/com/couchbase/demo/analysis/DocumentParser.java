@@ -0,0 +1,159 @@
+package com.couchbase.demo.analysis;
+
+import org.apache.tika.detect.Detector;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.fork.ForkParser;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.xml.sax.SAXException;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Extracts the text of a document with a bounded time and size. The media type is detected from the magic
+ * bytes and file name only, and the parser registered for that type is called directly instead of going
+ * through the full auto-detection chain. Parses run on a fixed pool, optionally delegating to forked JVMs.
+ */
+@Component
+public class DocumentParser {
+    private final Logger LOGGER = LoggerFactory.getLogger(DocumentParser.class);
+
+    private final Detector detector;
+    private final AutoDetectParser autoDetectParser;
+    private final ForkParser forkParser;
+    private final ExecutorService parserExecutor;
+    private final AnalyzerProperties properties;
+    private final MediaTypeRegistry registry;
+    private final Map<MediaType, Parser> parsers;
+    private final Map<MediaType, Parser> parsersByType = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DocumentParser(Detector detector, AutoDetectParser autoDetectParser,
+                          @Qualifier("parserExecutor") ExecutorService parserExecutor, AnalyzerProperties properties) {
+        this.detector = detector;
+        this.autoDetectParser = autoDetectParser;
+        this.forkParser = properties.getFork().isEnabled() ? newForkParser(autoDetectParser, properties) : null;
+        this.parserExecutor = parserExecutor;
+        this.properties = properties;
+        this.registry = autoDetectParser.getMediaTypeRegistry();
+        this.parsers = autoDetectParser.getParsers(new ParseContext());
+    }
+
+    /**
+     * Parses the document, filling in the metadata, and returns its text. The caller owns the text and
+     * closes it once the document is written.
+     * <p>
+     * On timeout the parse is cancelled by interrupting its thread, which most Tika parsers never check: the
+     * caller gets its failure straight away, but the parser keeps a thread of the pool busy until it ends on
+     * its own. Only {@code analyzer.fork.enabled} stops a runaway parser, by killing its forked JVM.
+     *
+     * @throws AnalysisException when the document can't be parsed within the configured timeout
+     */
+    public ExtractedText parse(Path content, Metadata metadata) {
+        return parse(content, metadata, null);
+    }
+
+    /**
+     * Parses the document, handing its embedded resources to the given extractor instead of appending their
+     * text to the one of the document. Forked parsers don't support it, they always append the text.
+     *
+     * @param embedded null to append the text of the embedded resources
+     */
+    ExtractedText parse(Path content, Metadata metadata, EmbeddedDocumentExtractor embedded) {
+        ExtractedText text = new ExtractedText(properties.getMemoryThreshold());
+        Future<ExtractedText> parsing = parserExecutor.submit(() -> extract(content, metadata, text, embedded));
+        try {
+            return parsing.get(properties.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            parsing.cancel(true);
+            text.close();
+            throw new AnalysisException("Parsing " + metadata.get(Metadata.RESOURCE_NAME_KEY) + " timed out after " + properties.getTimeout(), e);
+        } catch (InterruptedException e) {
+            parsing.cancel(true);
+            text.close();
+            Thread.currentThread().interrupt();
+            throw new AnalysisException("Interrupted parsing " + metadata.get(Metadata.RESOURCE_NAME_KEY), e);
+        } catch (ExecutionException e) {
+            text.close();
+            LOGGER.error("{} analyzing input stream", e.getCause().getClass().getSimpleName(), e.getCause());
+            throw new AnalysisException("Failed to parse " + metadata.get(Metadata.RESOURCE_NAME_KEY), e.getCause());
+        }
+    }
+
+    /**
+     * The SAX events of the parser are written as they come into the text, which spills to disk past
+     * {@code analyzer.memory-threshold}: the whole text is never held as one string.
+     */
+    private ExtractedText extract(Path content, Metadata metadata, ExtractedText text, EmbeddedDocumentExtractor embedded) throws IOException, SAXException, TikaException {
+        Writer out = text.writer();
+        WriteOutContentHandler handler = new WriteOutContentHandler(out, properties.getMaxCharacters());
+        try (out; TikaInputStream stream = TikaInputStream.get(content)) {
+            MediaType type = detector.detect(stream, metadata);
+            metadata.set(Metadata.CONTENT_TYPE, type.toString());
+
+            ParseContext context = new ParseContext();
+            context.set(Parser.class, autoDetectParser); // embedded documents
+            if (embedded != null) {
+                context.set(EmbeddedDocumentExtractor.class, embedded);
+            }
+            parserFor(type).parse(stream, new BodyContentHandler(handler), metadata, context);
+        } catch (SAXException e) {
+            if (!handler.isWriteLimitReached(e)) {
+                throw e;
+            }
+            text.markTruncated();
+            LOGGER.warn("Text of {} truncated to {} characters", metadata.get(Metadata.RESOURCE_NAME_KEY), properties.getMaxCharacters());
+        }
+        if (text.isSpilled()) {
+            LOGGER.debug("Text of {} spilled to disk, {} characters", metadata.get(Metadata.RESOURCE_NAME_KEY), text.length());
+        }
+        return text;
+    }
+
+    private Parser parserFor(MediaType type) {
+        return forkParser != null ? forkParser : parsersByType.computeIfAbsent(type, this::lookup);
+    }
+
+    private Parser lookup(MediaType type) {
+        for (MediaType candidate = registry.normalize(type); candidate != null; candidate = registry.getSupertype(candidate)) {
+            Parser parser = parsers.get(candidate);
+            if (parser != null) {
+                return parser;
+            }
+        }
+        return autoDetectParser;
+    }
+
+    private static ForkParser newForkParser(AutoDetectParser autoDetectParser, AnalyzerProperties properties) {
+        ForkParser parser = new ForkParser(DocumentParser.class.getClassLoader(), autoDetectParser);
+        parser.setPoolSize(properties.getFork().getPoolSize());
+        parser.setJavaCommand(properties.getFork().getJavaCommand());
+        parser.setServerParseTimeoutMillis(properties.getTimeout().toMillis());
+        return parser;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (forkParser != null) {
+            forkParser.close();
+        }
+    }
+}
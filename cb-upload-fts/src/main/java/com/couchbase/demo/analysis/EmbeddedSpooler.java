@@ -0,0 +1,149 @@
+package com.couchbase.demo.analysis;
+
+import com.couchbase.demo.storage.StorageException;
+import com.couchbase.demo.upload.FileUpload;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spools every embedded resource (attachment, embedded spreadsheet, archive entry...) to its own upload
+ * instead of parsing it inline, the way Tika's {@code RecursiveParserWrapper} separates them, so each one
+ * can be analyzed as a document of its own. The resources of one upload, at any depth, share a budget of
+ * count and bytes: once it is spent the remaining ones are skipped. A resource is counted as it is read,
+ * so one larger than the limits, such as a decompression bomb, is dropped before it fills the disk.
+ */
+class EmbeddedSpooler implements EmbeddedDocumentExtractor {
+    private final Logger LOGGER = LoggerFactory.getLogger(EmbeddedSpooler.class);
+
+    private final String container;
+    private final Budget budget;
+    private final long maxResourceBytes;
+    private final List<FileUpload> spooled = new ArrayList<>();
+    private int skipped;
+
+    /**
+     * @param budget what the resources of the whole upload may still take
+     * @param maxResourceBytes size of one resource, a larger one is skipped
+     */
+    EmbeddedSpooler(String container, Budget budget, long maxResourceBytes) {
+        this.container = container;
+        this.budget = budget;
+        this.maxResourceBytes = maxResourceBytes;
+    }
+
+    @Override
+    public boolean shouldParseEmbedded(Metadata metadata) {
+        return true;
+    }
+
+    @Override
+    public void parseEmbedded(InputStream stream, ContentHandler handler, Metadata metadata, boolean outputHtml) {
+        if (budget.count.getAndDecrement() <= 0) {
+            skipped++;
+            return;
+        }
+        String name = metadata.get(Metadata.RESOURCE_NAME_KEY);
+        BoundedInputStream bounded = new BoundedInputStream(stream, maxResourceBytes, budget.bytes);
+        try {
+            spooled.add(FileUpload.from(name == null || name.isBlank() ? "embedded-" + (spooled.size() + 1) : name, bounded));
+        } catch (StorageException e) {
+            // the spool file is already deleted, its bytes can be spent on the next resources
+            budget.bytes.addAndGet(bounded.count);
+            if (e.getCause() instanceof SizeLimitExceededException) {
+                skipped++;
+                LOGGER.warn("Skipped embedded resource {} of {}: {}", name, container, e.getCause().getMessage());
+            } else {
+                // empty resource or unusable name, nothing worth indexing
+                LOGGER.debug("Skipped embedded resource {} of {}: {}", name, container, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the resources spooled, owned by the caller which closes them once analyzed
+     */
+    List<FileUpload> getSpooled() {
+        return spooled;
+    }
+
+    /**
+     * @return the number of resources left out by the count or size limits
+     */
+    int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * What the resources of one upload may still take, shared by the spoolers of every depth.
+     */
+    static class Budget {
+        private final AtomicInteger count;
+        private final AtomicLong bytes;
+
+        Budget(int count, long bytes) {
+            this.count = new AtomicInteger(count);
+            this.bytes = new AtomicLong(bytes);
+        }
+    }
+
+    private static class SizeLimitExceededException extends IOException {
+        SizeLimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Takes every byte read from the shared budget and fails the read past either limit, which aborts the spool.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private final AtomicLong remaining;
+        private long count;
+
+        BoundedInputStream(InputStream in, long maxBytes, AtomicLong remaining) {
+            super(in);
+            this.maxBytes = maxBytes;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consume(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                consume(read);
+            }
+            return read;
+        }
+
+        private void consume(int read) throws IOException {
+            count += read;
+            long left = remaining.addAndGet(-read);
+            if (count > maxBytes) {
+                throw new SizeLimitExceededException("over analyzer.embedded.max-resource-size");
+            }
+            if (left < 0) {
+                throw new SizeLimitExceededException("over analyzer.embedded.max-total-size");
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.couchbase.demo.analysis;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Text of a document as the parser writes it: kept on heap up to a threshold, then spilled to a temporary
+ * file, so a huge document costs at most the threshold in heap until it is written. The text is read back
+ * as a stream, see {@link #openReader()}. Closing it deletes the spill file.
+ */
+public class ExtractedText implements Closeable {
+    private static final String SPILL_PREFIX = "cb-text-";
+    private static final String SPILL_SUFFIX = ".txt";
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final int memoryThreshold;
+    private char[] buffer = new char[0];
+    private long length;
+    private Path spill;
+    private Writer spillWriter;
+    private boolean truncated;
+    /**
+     * Set by the thread which gave up the parse, while the parser may still be writing
+     */
+    private volatile boolean closed;
+
+    /**
+     * @param memoryThreshold number of characters kept on heap, the text is spilled to disk past it
+     */
+    public ExtractedText(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    /**
+     * The sink the parser writes to, closing it ends the text.
+     */
+    Writer writer() {
+        return new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int count) throws IOException {
+                store(chars, offset, count);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (spillWriter != null) {
+                    spillWriter.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (spillWriter != null) {
+                    spillWriter.close();
+                }
+            }
+        };
+    }
+
+    private synchronized void store(char[] chars, int offset, int count) throws IOException {
+        if (closed) {
+            throw new IOException("Extracted text closed");
+        }
+        if (spillWriter == null && length + count > memoryThreshold) {
+            spill = Files.createTempFile(SPILL_PREFIX, SPILL_SUFFIX);
+            spillWriter = Files.newBufferedWriter(spill, StandardCharsets.UTF_8);
+            spillWriter.write(buffer, 0, (int) length);
+            buffer = null;
+        }
+        if (spillWriter != null) {
+            spillWriter.write(chars, offset, count);
+        } else {
+            if (length + count > buffer.length) {
+                int capacity = (int) Math.min(memoryThreshold, Math.max(length + count, Math.max(INITIAL_CAPACITY, buffer.length * 2L)));
+                buffer = Arrays.copyOf(buffer, capacity);
+            }
+            System.arraycopy(chars, offset, buffer, (int) length, count);
+        }
+        length += count;
+    }
+
+    void markTruncated() {
+        truncated = true;
+    }
+
+    /**
+     * @return the number of characters
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return whether the parser stopped at {@code analyzer.max-characters}, before the end of the document
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public boolean isSpilled() {
+        return spill != null;
+    }
+
+    /**
+     * Opens a new reader over the whole text. Callers are responsible for closing it.
+     */
+    public Reader openReader() throws IOException {
+        if (spill != null) {
+            return Files.newBufferedReader(spill, StandardCharsets.UTF_8);
+        }
+        if (buffer == null) {
+            throw new IllegalStateException("Extracted text already released");
+        }
+        return new CharArrayReader(buffer, 0, (int) length);
+    }
+
+    /**
+     * Reads the whole text into a string, for the rare consumers which need it at once.
+     */
+    public String asString() throws IOException {
+        if (spill != null) {
+            return Files.readString(spill, StandardCharsets.UTF_8);
+        }
+        if (buffer == null) {
+            throw new IllegalStateException("Extracted text already released");
+        }
+        return new String(buffer, 0, (int) length);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        buffer = null;
+        if (spill != null) {
+            try {
+                if (spillWriter != null) {
+                    spillWriter.close();
+                }
+                Files.deleteIfExists(spill);
+            } catch (IOException e) {
+                spill.toFile().deleteOnExit();
+            }
+        }
+    }
+}
@@ -3,14 +3,15 @@ package com.couchbase.demo.analysis;
 import com.couchbase.demo.binaries.SearchableBinary;
 import org.apache.tika.metadata.Metadata;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static java.util.Objects.nonNull;
+import java.util.function.BiConsumer;
 
+/**
+ * Maps the metadata extracted by Tika to {@link SearchableBinary.Metadata}. The common fields are described
+ * once, with the Tika names they may come from in order of preference, and compiled into a lookup table by
+ * Tika name, so converting a document is a single pass over its metadata names. Dates are normalized to
+ * ISO-8601 UTC strings, and the other values are stored as numbers, booleans or lists where they are.
+ */
 public class MetadataConverter {
     private static final String PROPERTYNAME_AUTHOR = "author";
     private static final String PROPERTYNAME_CREATED_AT = "createdAt";
@@ -18,61 +19,166 @@ public class MetadataConverter {
     private static final String PROPERTYNAME_UPDATED_BY = "lastUpdatedBy";
     private static final String PROPERTYNAME_KEYWORDS = "keywords";
 
-    private static final List<String> RESERVED_WORDS = List.of(PROPERTYNAME_AUTHOR,PROPERTYNAME_CREATED_AT,PROPERTYNAME_UPDATED_AT,PROPERTYNAME_UPDATED_BY,PROPERTYNAME_KEYWORDS);
-    private static final Map<String, List<String>> STANDARD_METADATA = new HashMap<>();      // TODO initialize the common attributes
+    private static final Set<String> RESERVED_WORDS = Set.of(PROPERTYNAME_AUTHOR,PROPERTYNAME_CREATED_AT,PROPERTYNAME_UPDATED_AT,PROPERTYNAME_UPDATED_BY,PROPERTYNAME_KEYWORDS);
 
-    static {
-        STANDARD_METADATA.put(PROPERTYNAME_AUTHOR, List.of("creator","meta:author","pdf:docinfo:creator","dc:creator","Last-Author", "pdf:docinfo:producer"));
-        STANDARD_METADATA.put(PROPERTYNAME_CREATED_AT, List.of("Creation-Date","meta:creation-date","dcterms:created"));
-        STANDARD_METADATA.put(PROPERTYNAME_UPDATED_AT, List.of("dcterms:modified","Last-Modified","Last-Save-Date","modified"));
-        STANDARD_METADATA.put(PROPERTYNAME_UPDATED_BY, List.of("Last-Author","meta:last-author"));
-        STANDARD_METADATA.put(PROPERTYNAME_KEYWORDS, List.of("Keywords","meta:keyword"));
-    }
+    private enum Kind { TEXT, DATE, TEXT_ARRAY }
 
-    public SearchableBinary.Metadata from(final org.apache.tika.metadata.Metadata metadata) {
-        //TODO checkNonNull(metadata);
-        //TODO checkNonNull(docType);
-        SearchableBinary.Metadata meta = extractCommonMetadata(metadata);
-
-        List<String> propertyNames = Stream.of(metadata.names()).collect(Collectors.toList());
-        propertyNames.removeAll(RESERVED_WORDS);
-        for(String name: propertyNames) {
-            meta.getOthers().put(name, metadata.get(name)); // TODO improve metadata types storage (i.e. data, boolean, int, array ...etc)
+    private static final class Field {
+        final Kind kind;
+        final List<String> aliases;
+        final BiConsumer<SearchableBinary.Metadata, Object> setter;
+
+        Field(Kind kind, List<String> aliases, BiConsumer<SearchableBinary.Metadata, Object> setter) {
+            this.kind = kind;
+            this.aliases = aliases;
+            this.setter = setter;
         }
+    }
 
-        return meta;
+    private static final class Alias {
+        final int field;
+        final int rank;
+
+        Alias(int field, int rank) {
+            this.field = field;
+            this.rank = rank;
+        }
     }
 
+    @SuppressWarnings("unchecked")
+    private static final List<Field> FIELDS = List.of(
+            new Field(Kind.TEXT, List.of("creator","meta:author","pdf:docinfo:creator","dc:creator","Last-Author", "pdf:docinfo:producer"),
+                    (meta, value) -> meta.setAuthor((String) value)),
+            new Field(Kind.DATE, List.of("Creation-Date","meta:creation-date","dcterms:created"),
+                    (meta, value) -> meta.setCreatedAt((String) value)),
+            new Field(Kind.DATE, List.of("dcterms:modified","Last-Modified","Last-Save-Date","modified"),
+                    (meta, value) -> meta.setLastUpdatedAt((String) value)),
+            new Field(Kind.TEXT, List.of("Last-Author","meta:last-author"),
+                    (meta, value) -> meta.setLastUpdatedBy((String) value)),
+            new Field(Kind.TEXT_ARRAY, List.of("Keywords","meta:keyword"),
+                    (meta, value) -> meta.getKeywords().addAll((List<String>) value)));
+
+    /**
+     * Tika name to the fields it may fill in; a name can feed several fields, such as "Last-Author".
+     */
+    private static final Map<String, List<Alias>> ALIASES = new HashMap<>();
 
-    private String[] extractArrayValue(String key, Metadata metadata) {
-        List<String> candidates = STANDARD_METADATA.get(key);
-        String []empty = new String[]{};
-        return nonNull(candidates) && !candidates.isEmpty() ?
-                candidates.stream().map(metadata::getValues).filter(Objects::nonNull)
-                        .findFirst().orElse(empty) : empty;
+    static {
+        for (int field = 0; field < FIELDS.size(); field++) {
+            List<String> aliases = FIELDS.get(field).aliases;
+            for (int rank = 0; rank < aliases.size(); rank++) {
+                ALIASES.computeIfAbsent(aliases.get(rank), name -> new ArrayList<>(1)).add(new Alias(field, rank));
+            }
+        }
     }
 
-    private Date extractDateValue(String key, Metadata metadata) {
-        List<String> candidates = STANDARD_METADATA.get(key);
-        return nonNull(candidates) && !candidates.isEmpty() ?
-                candidates.stream().map(metadata::get).filter(Objects::nonNull) //TODO parse Date multi-formats
-                        .map(LocalDateTime::parse).map(d -> Date.from(d.atZone(ZoneId.systemDefault()).toInstant()))
-                        .findFirst().orElse(null) : null;
+    private final MetadataDateParser dateParser;
+
+    public MetadataConverter() {
+        this(new MetadataDateParser());
     }
 
-    private String extractValue(String key, Metadata metadata) {
-        List<String> candidates = STANDARD_METADATA.get(key);
-        return nonNull(candidates) && !candidates.isEmpty() ?
-                candidates.stream().map(metadata::get).filter(Objects::nonNull).findFirst().orElse(null) : null;
+    public MetadataConverter(MetadataDateParser dateParser) {
+        this.dateParser = dateParser;
     }
 
-    private SearchableBinary.Metadata extractCommonMetadata(Metadata metadata) {
+    public SearchableBinary.Metadata from(final org.apache.tika.metadata.Metadata metadata) {
+        Objects.requireNonNull(metadata, "metadata");
         SearchableBinary.Metadata meta = new SearchableBinary.Metadata();
-        meta.setAuthor(extractValue(PROPERTYNAME_AUTHOR, metadata));
-        meta.setCreatedAt(extractValue(PROPERTYNAME_CREATED_AT,metadata));
-        meta.setLastUpdatedAt(extractValue(PROPERTYNAME_UPDATED_AT,metadata)); //TODO PARSE dates multi-formats
-        meta.setLastUpdatedBy(extractValue(PROPERTYNAME_UPDATED_BY,metadata));
-        meta.getKeywords().addAll(List.of(extractArrayValue(PROPERTYNAME_KEYWORDS,metadata)));
+        String[] chosen = new String[FIELDS.size()];
+        int[] ranks = new int[FIELDS.size()];
+        Arrays.fill(ranks, Integer.MAX_VALUE);
+
+        for (String name : metadata.names()) {
+            List<Alias> aliases = ALIASES.get(name);
+            if (aliases != null) {
+                for (Alias alias : aliases) {
+                    if (alias.rank < ranks[alias.field]) {
+                        ranks[alias.field] = alias.rank;
+                        chosen[alias.field] = name;
+                    }
+                }
+            }
+            if (!RESERVED_WORDS.contains(name)) {
+                meta.getOthers().put(name, typedValue(metadata.getValues(name)));
+            }
+        }
+        for (int field = 0; field < FIELDS.size(); field++) {
+            if (chosen[field] != null) {
+                Object value = fieldValue(FIELDS.get(field), chosen[field], metadata);
+                if (value != null) {
+                    FIELDS.get(field).setter.accept(meta, value);
+                }
+            }
+        }
         return meta;
     }
+
+    private Object fieldValue(Field field, String name, Metadata metadata) {
+        switch (field.kind) {
+            case DATE:
+                // an unknown format is left out of the field, the raw value stays in the others
+                return dateParser.toIsoString(metadata.get(name)).orElse(null);
+            case TEXT_ARRAY:
+                List<String> values = new ArrayList<>();
+                for (String value : metadata.getValues(name)) {
+                    for (String item : value.split("[,;]")) {
+                        if (!item.isBlank()) {
+                            values.add(item.trim());
+                        }
+                    }
+                }
+                return values;
+            default:
+                return metadata.get(name);
+        }
+    }
+
+    private Object typedValue(String[] values) {
+        if (values.length == 1) {
+            return typedValue(values[0]);
+        }
+        List<Object> typed = new ArrayList<>(values.length);
+        for (String value : values) {
+            typed.add(typedValue(value));
+        }
+        return typed;
+    }
+
+    /**
+     * Booleans and numbers are stored as such, dates as ISO-8601 strings, anything else as is. Numbers with
+     * leading zeros, such as identifiers or postal codes, stay strings.
+     */
+    private Object typedValue(String value) {
+        if (value == null || value.isEmpty()) {
+            return value;
+        }
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.valueOf(value);
+        }
+        int digits = 0;
+        int dots = 0;
+        int start = value.charAt(0) == '-' ? 1 : 0;
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && i > start) {
+                dots++;
+            } else {
+                digits = -1;
+                break;
+            }
+        }
+        boolean leadingZero = value.length() > start + 1 && value.charAt(start) == '0' && value.charAt(start + 1) != '.';
+        if (digits > 0 && !leadingZero && value.charAt(value.length() - 1) != '.') {
+            if (dots == 0 && digits <= 18) {
+                return Long.parseLong(value);
+            }
+            if (dots == 1) {
+                return Double.parseDouble(value);
+            }
+        }
+        return dateParser.toIsoString(value).orElse(value);
+    }
 }
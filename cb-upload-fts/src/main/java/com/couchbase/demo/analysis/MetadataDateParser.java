@@ -0,0 +1,174 @@
+package com.couchbase.demo.analysis;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.time.format.DateTimeFormatter.*;
+
+/**
+ * Parses the date formats found in document metadata. The format which recognized a value is remembered by
+ * the shape of the value (digits and letters masked), so the next values of the same shape take a single
+ * parse attempt, falling back to the other formats when it fails. Only successes are remembered: a shape
+ * is not a reason to reject a value. Values without the four digits of a year are rejected without any
+ * attempt. Values already in the ISO-8601 UTC form Tika mostly writes, such as {@code 2020-01-10T10:00:00Z},
+ * are read without a formatter.
+ */
+public class MetadataDateParser {
+    private static final int MAX_SHAPES = 1024;
+    private static final int MIN_LENGTH = 8;
+    private static final int MAX_LENGTH = 40;
+    private static final int MIN_DIGITS = 4;
+
+    private static final List<DateTimeFormatter> FORMATS = List.of(
+            ISO_OFFSET_DATE_TIME,                                           // 2020-01-10T10:00:00Z
+            ISO_LOCAL_DATE_TIME,                                            // 2020-01-10T10:00:00
+            ofPattern("yyyy-MM-dd HH:mm:ss[XXX]", Locale.ROOT),             // 2020-01-10 10:00:00
+            ISO_LOCAL_DATE,                                                 // 2020-01-10
+            RFC_1123_DATE_TIME,                                             // Fri, 10 Jan 2020 10:00:00 GMT
+            ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.ROOT),         // Date#toString
+            ofPattern("yyyy:MM:dd HH:mm:ss", Locale.ROOT),                  // EXIF
+            ofPattern("yyyyMMddHHmmss[XXX]", Locale.ROOT),                  // PDF, without the "D:" prefix
+            ofPattern("M/d/yyyy[ H:mm[:ss]]", Locale.ROOT));
+
+    private final Map<String, Integer> formatsByShape = new ConcurrentHashMap<>();
+    private final ZoneId defaultZone;
+
+    public MetadataDateParser() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * @param defaultZone zone of the dates written without offset
+     */
+    public MetadataDateParser(ZoneId defaultZone) {
+        this.defaultZone = defaultZone;
+    }
+
+    public Optional<Instant> parse(String value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        String text = value.startsWith("D:") ? value.substring(2) : value.trim();
+        if (text.length() < MIN_LENGTH || text.length() > MAX_LENGTH || !Character.isLetterOrDigit(text.charAt(0))) {
+            return Optional.empty();
+        }
+        Instant canonical = parseCanonical(text);
+        if (canonical != null) {
+            return Optional.of(canonical);
+        }
+        String shape = shapeOf(text);
+        if (shape == null) {
+            return Optional.empty();
+        }
+        Integer known = formatsByShape.get(shape);
+        if (known != null) {
+            Instant parsed = tryParse(FORMATS.get(known), text);
+            if (parsed != null) {
+                return Optional.of(parsed);
+            }
+        }
+        for (int i = 0; i < FORMATS.size(); i++) {
+            if (known != null && i == known) {
+                continue;
+            }
+            Instant parsed = tryParse(FORMATS.get(i), text);
+            if (parsed != null) {
+                remember(shape, i);
+                return Optional.of(parsed);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The value as an ISO-8601 UTC date time, such as {@code 2020-01-10T10:00:00Z}, the format FTS indexes as a datetime.
+     */
+    public Optional<String> toIsoString(String value) {
+        if (value != null && parseCanonical(value) != null) {
+            return Optional.of(value);
+        }
+        return parse(value).map(ISO_INSTANT::format);
+    }
+
+    /**
+     * Reads {@code yyyy-MM-ddTHH:mm:ssZ}, null when the text isn't exactly in that form.
+     */
+    private static Instant parseCanonical(String text) {
+        if (text.length() != 20 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                || text.charAt(13) != ':' || text.charAt(16) != ':' || text.charAt(19) != 'Z') {
+            return null;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        int hour = digits(text, 11, 13);
+        int minute = digits(text, 14, 16);
+        int second = digits(text, 17, 19);
+        if ((year | month | day | hour | minute | second) < 0) {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second).toInstant(ZoneOffset.UTC);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private Instant tryParse(DateTimeFormatter format, String text) {
+        try {
+            TemporalAccessor parsed = format.parse(text);
+            if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+                return Instant.from(parsed);
+            }
+            LocalDate date = LocalDate.from(parsed);
+            return parsed.isSupported(ChronoField.NANO_OF_DAY)
+                    ? date.atTime(LocalTime.from(parsed)).atZone(defaultZone).toInstant()
+                    : date.atStartOfDay(defaultZone).toInstant();
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private void remember(String shape, int format) {
+        if (formatsByShape.size() < MAX_SHAPES) {
+            formatsByShape.put(shape, format);
+        }
+    }
+
+    /**
+     * @return the text with digits and letters masked, null when it has fewer digits than a year
+     */
+    private static String shapeOf(String text) {
+        char[] shape = new char[text.length()];
+        int digits = 0;
+        for (int i = 0; i < shape.length; i++) {
+            char c = text.charAt(i);
+            if (Character.isDigit(c)) {
+                digits++;
+                shape[i] = '9';
+            } else {
+                shape[i] = Character.isLetter(c) ? 'a' : c;
+            }
+        }
+        return digits < MIN_DIGITS ? null : new String(shape);
+    }
+}
@@ -1,13 +1,21 @@
 package com.couchbase.demo.binaries;
 
-import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
-import com.couchbase.client.java.document.BinaryDocument;
 import com.couchbase.client.java.repository.annotation.Id;
+import com.couchbase.demo.upload.FileUpload;
 import lombok.*;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
+/**
+ * Manifest of a file kept in Couchbase. The content itself is split into {@code chunkCount} binary
+ * documents, see {@link #chunkId(int)}. Every store writes its chunks under a new {@code generation}, so
+ * the chunks of the file being replaced stay intact until the manifest points at the new ones.
+ */
 @Data
 @Builder
 @AllArgsConstructor
@@ -20,6 +28,34 @@ public class BinaryDoc {
     private final String type = PREFIX_TYPE;
     @Builder.Default
     List<String> channels = new ArrayList<>();
-    ByteBuf content; // TODO blob type
+    String filename;
+    long size;
+    int chunkSize;
+    int chunkCount;
+    Date storedAt;
+    /**
+     * Random key of the chunks written by the store, missing from the manifests written before generations
+     */
+    String generation;
 
+    public static String idOf(String fileId) {
+        return PREFIX_TYPE.concat(":").concat(fileId);
+    }
+
+    /**
+     * Manifest id of a file named after the SHA-256 of its exact name, so two names never share a manifest
+     */
+    public static String idOfFilename(String filename) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return idOf(FileUpload.toHex(digest.digest(filename.getBytes(StandardCharsets.UTF_8))));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String chunkId(int index) {
+        String prefix = generation == null ? id : id.concat("::").concat(generation);
+        return prefix.concat("::").concat(String.valueOf(index));
+    }
 }
@@ -1,78 +1,501 @@
 package com.couchbase.demo.binaries;
 
-import com.couchbase.client.java.document.BinaryDocument;
-import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.MutationState;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.FtsServerOverloadException;
+import com.couchbase.client.java.error.subdoc.PathMismatchException;
+import com.couchbase.client.java.error.subdoc.PathNotFoundException;
 import com.couchbase.client.java.search.SearchQuery;
-import com.couchbase.client.java.search.queries.QueryStringQuery;
-import com.couchbase.client.java.search.result.SearchQueryResult;
+import com.couchbase.client.java.search.queries.AbstractFtsQuery;
+import com.couchbase.client.java.search.queries.DateRangeQuery;
+import com.couchbase.client.java.search.queries.NumericRangeQuery;
+import com.couchbase.client.java.search.sort.SearchSort;
 import com.couchbase.demo.analysis.DocumentAnalyzer;
+import com.couchbase.demo.analysis.MetadataDateParser;
+import com.couchbase.demo.metrics.IngestTrace;
+import com.couchbase.demo.metrics.SearchMetrics;
 import com.couchbase.demo.upload.FileUpload;
-import com.fasterxml.jackson.databind.util.RawValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import rx.Observable;
 
-import java.util.Arrays;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 
 @Service
 public class BinaryService {
     private final Logger LOGGER = LoggerFactory.getLogger(BinaryService.class);
     public static final String []SEARCHING_FIELDS = {"registeredAt","reference","metadata", "metadata.author","metadata.createdAt","metadata.keywords","thumbnail"};
+    public static final Set<String> PROJECTABLE_FIELDS = Set.of("body", "truncated", "parentId", "embedded", "reference", "references", "contentHash", "docType", "registeredAt", "thumbnail", "metadata");
+    private static final List<String> DEFAULT_FIELDS = List.of("truncated", "parentId", "embedded", "reference", "references", "contentHash", "docType", "registeredAt", "thumbnail", "metadata");
+    private static final Set<String> METADATA_FIELDS = Set.of("createdAt", "lastUpdatedBy", "lastUpdatedAt", "author", "keywords");
+    private static final Set<String> METADATA_DATE_FIELDS = Set.of("createdAt", "lastUpdatedAt");
+    private static final int MAX_SUBDOC_SPECS = 16;
+    /**
+     * Writes in flight for the parts embedded in a single upload
+     */
+    private static final int PARTS_WRITE_CONCURRENCY = 16;
 
-    private final SearchableBinaryRepository searchableBinaryRepository;
-    private final BinaryDocRepository binaryDocRepository;
     private final DocumentAnalyzer analyzer;
-    private final BinaryDocConverter adapter = new BinaryDocConverter();
+    private final SearchableBinaryWriter writer;
+    private final ExecutorService analysisExecutor;
+    private final SearchResultCache cache;
+    private final SearchClient searchClient;
+    private final Semaphore inFlightSearches;
+    private final int facetSize;
+    private final SearchProperties.Index index;
+    private final ObjectProvider<SearchIndexManager> indexManager;
+    private final SearchMetrics searchMetrics;
+    private final MetadataDateParser dateParser = new MetadataDateParser();
 
     @Autowired
-    public BinaryService(SearchableBinaryRepository searchableBinaryRepository, BinaryDocRepository binaryDocRepository, DocumentAnalyzer analyzer) {
-        this.searchableBinaryRepository = searchableBinaryRepository;
-        this.binaryDocRepository = binaryDocRepository;
+    public BinaryService(SearchClient searchClient, DocumentAnalyzer analyzer, SearchableBinaryWriter writer,
+                         @Qualifier("analysisExecutor") ExecutorService analysisExecutor, SearchResultCache cache,
+                         SearchProperties searchProperties, SearchMetrics searchMetrics, ObjectProvider<SearchIndexManager> indexManager) {
         this.analyzer = analyzer;
+        this.writer = writer;
+        this.analysisExecutor = analysisExecutor;
+        this.cache = cache;
+        this.searchClient = searchClient;
+        this.inFlightSearches = new Semaphore(searchProperties.getMaxInFlight());
+        this.facetSize = searchProperties.getFacetSize();
+        this.index = searchProperties.getIndex();
+        this.indexManager = indexManager;
+        this.searchMetrics = searchMetrics;
     }
 
-    public SearchableBinary findById(String docId) {
-        return searchableBinaryRepository.findById(docId).orElse(null);
+    /**
+     * Reads only the requested top level fields, every field but the extracted body if none is given.
+     */
+    public Optional<SearchableBinary> findById(String docId, Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return writer.lookup(docId, DEFAULT_FIELDS);
+        }
+        if (!PROJECTABLE_FIELDS.containsAll(fields)) {
+            throw new IllegalArgumentException("Unknown fields " + fields + ", expected any of " + PROJECTABLE_FIELDS);
+        }
+        return writer.lookup(docId, new LinkedHashSet<>(fields));
     }
 
-    public SearchResult binarySearch(String content) {
-        String indexName = "binarySearch";
-        QueryStringQuery query = SearchQuery.queryString(content);
+    /**
+     * Updates the given metadata fields in place, a null value removes the field. Dates are normalized to
+     * ISO-8601 UTC strings. Fields other than the known ones go to the free form metadata, where they may also
+     * be numbers, booleans or lists.
+     *
+     * @return the updated metadata, empty if the document doesn't exist
+     */
+    public Optional<SearchableBinary> updateMetadata(String docId, Map<String, Object> changes) {
+        if (changes.isEmpty() || changes.size() > MAX_SUBDOC_SPECS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_SUBDOC_SPECS + " metadata fields can be updated at once");
+        }
+        Map<String, Object> valuesByPath = new LinkedHashMap<>();
+        changes.forEach((name, value) -> valuesByPath.put(metadataPath(name, value), normalize(name, value)));
+        try {
+            if (!writer.mutate(docId, valuesByPath)) {
+                return Optional.empty();
+            }
+        } catch (PathNotFoundException e) {
+            throw new IllegalArgumentException("Cannot remove a metadata field which isn't set: " + e.getMessage(), e);
+        } catch (PathMismatchException e) {
+            throw new IllegalArgumentException("Metadata field doesn't match the stored value: " + e.getMessage(), e);
+        }
+        cache.invalidateAll();
+        return writer.lookup(docId, List.of("metadata"));
+    }
 
-        SearchQueryResult result = searchableBinaryRepository.getCouchbaseOperations().getCouchbaseBucket()
-                .query(new SearchQuery(indexName, query).limit(10).highlight().fields(SEARCHING_FIELDS));
+    private static String metadataPath(String name, Object value) {
+        if (name.isEmpty() || name.contains(".") || name.contains("[") || name.contains("`")) {
+            throw new IllegalArgumentException("Invalid metadata field name: " + name);
+        }
+        if ("keywords".equals(name)) {
+            if (value != null && !(value instanceof List && ((List<?>) value).stream().allMatch(String.class::isInstance))) {
+                throw new IllegalArgumentException("keywords must be a list of strings");
+            }
+            return "metadata.keywords";
+        }
+        if (!METADATA_FIELDS.contains(name)) {
+            if (value != null && !isScalar(value) && !(value instanceof List && ((List<?>) value).stream().allMatch(BinaryService::isScalar))) {
+                throw new IllegalArgumentException("Metadata field " + name + " must be a string, a number, a boolean or a list of them");
+            }
+            return "metadata.others." + name;
+        }
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Metadata field " + name + " must be a string");
+        }
+        return "metadata." + name;
+    }
 
-        return SearchResult.from(result);
+    private static boolean isScalar(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean;
     }
 
-    public SearchableBinary save(FileUpload file) {
-        SearchableBinary searchableDoc = analyzer.analyze(file);
-      //  save(adapter.convert(file)); // save binary as a blob in content property
-        return save(searchableDoc);
+    private Object normalize(String name, Object value) {
+        if (value == null || !METADATA_DATE_FIELDS.contains(name)) {
+            return value;
+        }
+        return dateParser.toIsoString((String) value)
+                .orElseThrow(() -> new IllegalArgumentException("Metadata field " + name + " must be a date, such as 2020-01-10T10:00:00Z"));
     }
 
+    /**
+     * Runs the search without blocking the calling thread. At most {@code search.max-in-flight} searches
+     * run on FTS at once: past that, or when FTS reports it is overloaded, the search fails right away with a
+     * {@link SearchRejectedException}. The facet counts come back with the hits, in the same round trip.
+     * Searches given session tokens wait for the index to reach those writes; the others never wait.
+     */
+    public CompletableFuture<SearchResult> binarySearch(SearchRequest request) {
+        SearchCursor cursor = request.getCursor() == null ? SearchCursor.offset(request.getFrom()) : SearchCursor.decode(request.getCursor());
+        if (request.isConsistent()) {
+            return query(request, cursor, SessionToken.decode(request.getConsistentWith()));
+        }
+        SearchResultCache.Key key = SearchResultCache.Key.of(request, SEARCHING_FIELDS);
+        return cache.get(key, () -> query(request, cursor, null));
+    }
 
-    private SearchableBinary save(SearchableBinary doc) {
-        return searchableBinaryRepository.save(doc);
+    /**
+     * @param consistency writes the index must have caught up with, null to search it as it is
+     */
+    private CompletableFuture<SearchResult> query(SearchRequest request, SearchCursor cursor, MutationState consistency) {
+        long start = System.nanoTime();
+        // parsed before taking a permit, an invalid sort, cursor or filter fails with a 400 without holding one
+        SearchRequest.Order primary = request.getOrders().get(0);
+        long now = SearchFacets.now();
+        List<AbstractFtsQuery> clauses = new ArrayList<>();
+        clauses.add(SearchQuery.queryString(request.getQuery()));
+        if (cursor.isKeyset() && primary.getKey().isKeyset()) {
+            clauses.add(startingAt(primary, cursor.getLastValue()));
+        }
+        if (request.isFiltered()) {
+            clauses.addAll(SearchFacets.filters(request.getFilters(), now));
+        }
+        if (!inFlightSearches.tryAcquire()) {
+            searchMetrics.record(request.getQuery(), System.nanoTime() - start, "rejected", 0);
+            return CompletableFuture.failedFuture(new SearchRejectedException("Too many searches in progress"));
+        }
+        try {
+            return submit(request, cursor, consistency, primary, now, clauses, start);
+        } catch (RuntimeException e) {
+            inFlightSearches.release();
+            throw e;
+        }
     }
 
-    private BinaryDoc save(BinaryDoc doc) {
-        return binaryDocRepository.save(doc);
+    /**
+     * Sends the search holding a permit of {@code inFlightSearches}, released once the search completes.
+     */
+    private CompletableFuture<SearchResult> submit(SearchRequest request, SearchCursor cursor, MutationState consistency,
+                                                   SearchRequest.Order primary, long now, List<AbstractFtsQuery> clauses, long start) {
+        AbstractFtsQuery query = clauses.size() == 1 ? clauses.get(0) : SearchQuery.conjuncts(clauses.toArray(new AbstractFtsQuery[0]));
+        SearchQuery searchQuery = new SearchQuery(consistency == null ? index.getAlias() : searchedIndex(), query)
+                .skip(cursor.getFrom())
+                .limit(request.getSize() + cursor.getSeen().size())
+                .sort(sortOf(request))
+                .fields(SEARCHING_FIELDS);
+        if (index.isBodyStored()) {
+            searchQuery.highlight();
+        }
+        if (consistency != null && !SessionToken.isEmpty(consistency)) {
+            searchQuery.consistentWith(consistency);
+        }
+
+        // the counts of an unfiltered search don't depend on the page or the sort, they are reused for a while
+        Map<String, SearchResult.Facet> cachedFacets = request.isFacets() && !request.isFiltered() && consistency == null
+                ? cache.getFacets(request.getQuery()) : null;
+        boolean computeFacets = request.isFacets() && cachedFacets == null;
+        long facetsGeneration = cache.generation();
+        if (computeFacets) {
+            SearchFacets.facets(facetSize, now).forEach(searchQuery::addFacet);
+        }
+
+        CompletableFuture<SearchResult> result = new CompletableFuture<>();
+        searchClient.query(searchQuery)
+                .flatMap(found -> Observable.zip(found.metrics(), found.hits().toList(), found.facets().toList(),
+                        (metrics, hits, facets) -> {
+                            SearchResult page = SearchResult.from(metrics.totalHits(), hits);
+                            if (computeFacets) {
+                                page.setFacets(SearchFacets.toResult(facets));
+                                if (!request.isFiltered()) {
+                                    cache.putFacets(request.getQuery(), page.getFacets(), facetsGeneration, start);
+                                }
+                            } else if (cachedFacets != null) {
+                                page.setFacets(cachedFacets);
+                            }
+                            return page;
+                        }))
+                .single()
+                .subscribe(page -> result.complete(paginate(page, request, primary, cursor)),
+                        error -> result.completeExceptionally(error instanceof FtsServerOverloadException
+                                ? new SearchRejectedException("Search service is overloaded", error) : error));
+        return result.whenComplete((page, error) -> {
+            inFlightSearches.release();
+            searchMetrics.record(request.getQuery(), System.nanoTime() - start,
+                    error == null ? "success" : error instanceof SearchRejectedException ? "rejected" : "error",
+                    page == null ? 0 : page.getTotal());
+        });
+    }
+
+    /**
+     * The index behind the alias: the consistency vectors of a search are matched against the name of the
+     * index it runs on, so a search waiting for writes names the index itself.
+     */
+    private String searchedIndex() {
+        SearchIndexManager manager = indexManager.getIfAvailable();
+        return manager == null ? index.getAlias() : manager.getSearchedIndex().orElse(index.getAlias());
     }
 
+    private SearchResult paginate(SearchResult page, SearchRequest request, SearchRequest.Order primary, SearchCursor cursor) {
+        page.getHits().removeIf(hit -> cursor.getSeen().contains(hit.getId()));
+        if (page.getHits().size() > request.getSize()) {
+            page.getHits().subList(request.getSize(), page.getHits().size()).clear();
+        }
+        if (page.getHits().size() == request.getSize()) {
+            page.setNext(nextCursor(primary, cursor, page, request.getSize()).encode());
+        }
+        return page;
+    }
 
-    private static class BinaryDocConverter {
+    private Object[] sortOf(SearchRequest request) {
+        List<Object> sort = new ArrayList<>();
+        for (SearchRequest.Order order : request.getOrders()) {
+            sort.add(order.getKey().getField() == null ? SearchSort.sortScore().descending(order.isDescending())
+                    : SearchSort.sortField(order.getKey().getField()).descending(order.isDescending()));
+        }
+        sort.add(SearchSort.sortId());
+        return sort.toArray();
+    }
 
-        public BinaryDoc convert(FileUpload upload) {
-            
-            return BinaryDoc.builder()
-                    .id(BinaryDoc.PREFIX_TYPE.concat(":".concat(upload.getId())))
-                    .content(upload.getCouchbaseBinaryByteBuf()) // TODO save blob property
-                    .channels(Arrays.asList("attachments"))
-                    .build();
+    /**
+     * Range filter matching the hits sorted at or after the given value of the primary sort key.
+     */
+    private AbstractFtsQuery startingAt(SearchRequest.Order order, String value) {
+        String field = order.getKey().getField();
+        if (order.getKey() == SearchRequest.SortKey.REGISTERED_AT) {
+            double number;
+            try {
+                number = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid search cursor", e);
+            }
+            NumericRangeQuery range = SearchQuery.numericRange().field(field);
+            return order.isDescending() ? range.max(number, true) : range.min(number, true);
         }
+        DateRangeQuery range = SearchQuery.dateRange().field(field);
+        return order.isDescending() ? range.end(value, true) : range.start(value, true);
+    }
 
+    /**
+     * Keyset cursor after the last hit when sorting on a field every document has, plain offset otherwise.
+     */
+    private SearchCursor nextCursor(SearchRequest.Order primary, SearchCursor current, SearchResult page, int size) {
+        if (!primary.getKey().isKeyset()) {
+            return SearchCursor.offset(current.getFrom() + size);
+        }
+        String lastValue = primary.getKey().valueOf(page.getHits().get(page.getHits().size() - 1));
+        List<String> seen = new ArrayList<>();
+        if (lastValue != null && lastValue.equals(current.getLastValue())) {
+            seen.addAll(current.getSeen());
+        }
+        page.getHits().stream()
+                .filter(hit -> Objects.equals(lastValue, primary.getKey().valueOf(hit)))
+                .forEach(hit -> seen.add(hit.getId()));
+        return lastValue == null ? SearchCursor.offset(current.getFrom() + size) : SearchCursor.after(lastValue, seen);
+    }
 
+    /**
+     * Analyzes and saves the upload, unless the same content is already indexed. In that case only the
+     * file name is added to the references of the existing document. The result carries the
+     * {@link SessionToken} of the write of the document, which happens after the ones of its parts.
+     * A new document is inserted, never upserted: when another upload of the same content inserted it in
+     * the meantime, this one only adds its file name to it, so no reference is lost.
+     */
+    public SaveResult save(FileUpload file) {
+        String id = SearchableBinary.idOf(file.getContentHash());
+        Optional<MutationState> referenced = writer.exists(id) ? writer.addReference(id, file.getFilename()) : Optional.empty();
+        if (referenced.isPresent()) {
+            LOGGER.info("{} already indexed as {}, skipping analysis", file.getFilename(), id);
+            cache.invalidateAll();
+            return SaveResult.duplicate(file.getFilename(), id).withSessionToken(SessionToken.encode(referenced.get()));
+        }
+        SearchableBinary analyzed = analyzer.analyze(file);
+        Optional<MutationState> written;
+        try {
+            written = file.getTrace().time(IngestTrace.SAVE, () -> {
+                writeParts(List.of(analyzed), PARTS_WRITE_CONCURRENCY);
+                return writer.insert(analyzed);
+            });
+        } finally {
+            analyzed.releaseText();
+        }
+        if (written.isEmpty()) {
+            LOGGER.info("{} indexed as {} by another upload meanwhile", file.getFilename(), id);
+            referenced = writer.addReference(id, file.getFilename());
+            cache.invalidateAll();
+            return SaveResult.duplicate(file.getFilename(), id).withSessionToken(SessionToken.encode(referenced
+                    .orElseThrow(() -> new IllegalStateException("Document " + id + " removed while saving " + file.getFilename()))));
+        }
+        cache.invalidateAll();
+        return SaveResult.success(analyzed.getReference(), analyzed.getId()).withSessionToken(SessionToken.encode(written.get()));
+    }
+
+    /**
+     * Analyzes the uploads in parallel on the analysis pool and inserts the resulting documents as one batch.
+     * Uploads whose content is already indexed, repeated within the batch, or inserted by another upload in the
+     * meantime, only add their file name to the references of that document. The file names of the uploads
+     * must be distinct.
+     *
+     * @return one result per upload, in the order of the uploads
+     */
+    public List<SaveResult> saveAll(List<FileUpload> uploads, int writeConcurrency) {
+        Set<String> known = new HashSet<>(writer.findExisting(uploads.stream()
+                .map(upload -> SearchableBinary.idOf(upload.getContentHash())).collect(Collectors.toSet()), writeConcurrency));
+        List<Integer> files = new ArrayList<>(uploads.size());
+        List<Integer> repeated = new ArrayList<>();
+        for (int i = 0; i < uploads.size(); i++) {
+            if (known.add(SearchableBinary.idOf(uploads.get(i).getContentHash()))) {
+                files.add(i);
+            } else {
+                repeated.add(i);
+            }
+        }
+
+        List<CompletableFuture<SearchableBinary>> analyzing = files.stream()
+                .map(i -> CompletableFuture.supplyAsync(() -> analyzer.analyze(uploads.get(i)), analysisExecutor))
+                .collect(Collectors.toList());
+
+        SaveResult[] results = new SaveResult[uploads.size()];
+        List<SearchableBinary> docs = new ArrayList<>(files.size());
+        List<Integer> analyzed = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                docs.add(analyzing.get(i).join());
+                analyzed.add(files.get(i));
+            } catch (CompletionException e) {
+                results[files.get(i)] = SaveResult.failure(uploads.get(files.get(i)).getFilename(), null, e.getCause());
+            }
+        }
+
+        Map<String, Throwable> failures;
+        try {
+            writeParts(docs, writeConcurrency);
+            failures = writer.insertAll(docs, writeConcurrency);
+        } finally {
+            docs.forEach(SearchableBinary::releaseText);
+        }
+        for (int i = 0; i < docs.size(); i++) {
+            SearchableBinary doc = docs.get(i);
+            Throwable failure = failures.get(doc.getId());
+            if (failure instanceof DocumentAlreadyExistsException) {
+                repeated.add(analyzed.get(i));
+            } else {
+                results[analyzed.get(i)] = failure == null ? SaveResult.success(doc.getReference(), doc.getId())
+                        : SaveResult.failure(doc.getReference(), doc.getId(), failure);
+            }
+        }
+
+        Map<String, String> duplicates = new LinkedHashMap<>();
+        repeated.forEach(i -> duplicates.put(uploads.get(i).getFilename(), SearchableBinary.idOf(uploads.get(i).getContentHash())));
+        Map<String, Throwable> referenceFailures = writer.addReferences(duplicates, writeConcurrency);
+        for (int i : repeated) {
+            String filename = uploads.get(i).getFilename();
+            Throwable failure = referenceFailures.get(filename);
+            results[i] = failure == null ? SaveResult.duplicate(filename, duplicates.get(filename))
+                    : SaveResult.failure(filename, duplicates.get(filename), failure);
+        }
+        cache.invalidateAll();
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Undoes a save whose file could not be stored, so no search hit points at a missing file: a new
+     * document is removed, an existing one loses the file name the save added to its references.
+     */
+    public void discard(SaveResult saved) {
+        if (saved.isDuplicate()) {
+            writer.removeReference(saved.getDocumentId(), saved.getFilename());
+        } else {
+            removeParts(saved.getDocumentId());
+            writer.remove(saved.getDocumentId());
+        }
+        cache.invalidateAll();
+        LOGGER.info("Discarded {} of {}", saved.getDocumentId(), saved.getFilename());
+    }
+
+    /**
+     * Overwrites already indexed documents with a new analysis of their content, keeping what the analysis
+     * can't tell again: every file name the content was uploaded with and when it was first registered.
+     * Documents repeated in the list are written once, with the file names of all of them. Their parts are
+     * written first, the same way. The extracted texts of the documents are released once written.
+     *
+     * @return the failures indexed by document id, empty if every write succeeded
+     */
+    public Map<String, Throwable> replaceAll(List<SearchableBinary> docs, int writeConcurrency) {
+        try {
+            writeParts(docs, writeConcurrency);
+            return replaceAllNow(docs, writeConcurrency);
+        } finally {
+            docs.forEach(SearchableBinary::releaseText);
+        }
+    }
+
+    private Map<String, Throwable> replaceAllNow(List<SearchableBinary> docs, int writeConcurrency) {
+        Map<String, SearchableBinary> byId = new LinkedHashMap<>();
+        for (SearchableBinary doc : docs) {
+            byId.merge(doc.getId(), doc, (kept, repeated) -> {
+                addReferences(kept, repeated.getReferences());
+                return kept;
+            });
+        }
+        writer.lookupAll(byId.keySet(), List.of("references", "registeredAt"), writeConcurrency).forEach((id, existing) -> {
+            SearchableBinary doc = byId.get(id);
+            addReferences(doc, existing.getReferences());
+            if (existing.getRegisteredAt() != null) {
+                doc.setRegisteredAt(existing.getRegisteredAt());
+            }
+        });
+        Map<String, Throwable> failures = writer.upsertAll(new ArrayList<>(byId.values()), writeConcurrency);
+        cache.invalidateAll();
+        return failures;
+    }
+
+    /**
+     * Writes the parts extracted from the documents, keeping the file names and registration date of those
+     * already indexed, before their parents: a parent found by a search has its parts written. A part which
+     * can't be written is only logged, its parent is still saved.
+     */
+    private void writeParts(List<SearchableBinary> docs, int writeConcurrency) {
+        List<SearchableBinary> parts = docs.stream().flatMap(doc -> doc.allParts().stream()).collect(Collectors.toList());
+        if (!parts.isEmpty()) {
+            replaceAllNow(parts, writeConcurrency).forEach((id, failure) -> LOGGER.warn("Could not write embedded document {}", id, failure));
+        }
+    }
+
+    /**
+     * Removes the parts of the document at every depth, but the ones embedded in another document since.
+     */
+    private void removeParts(String id) {
+        List<String> embedded = writer.lookup(id, List.of("embedded")).map(SearchableBinary::getEmbedded).orElse(null);
+        if (embedded == null || embedded.isEmpty()) {
+            return;
+        }
+        writer.lookupAll(embedded, List.of("parentId"), PARTS_WRITE_CONCURRENCY).forEach((partId, part) -> {
+            if (id.equals(part.getParentId())) {
+                removeParts(partId);
+                writer.remove(partId);
+            }
+        });
+    }
+
+    private static void addReferences(SearchableBinary doc, List<String> references) {
+        if (references != null) {
+            references.stream().filter(reference -> !doc.getReferences().contains(reference)).forEach(doc.getReferences()::add);
+        }
     }
 }
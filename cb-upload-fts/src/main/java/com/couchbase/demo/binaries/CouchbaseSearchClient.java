@@ -0,0 +1,32 @@
+package com.couchbase.demo.binaries;
+
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.result.AsyncSearchQueryResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import rx.Observable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the searches to the FTS service of the bucket, on the async API.
+ */
+@Component
+@Profile("!offline")
+public class CouchbaseSearchClient implements SearchClient {
+    private final AsyncBucket bucket;
+    private final long timeoutMs;
+
+    @Autowired
+    public CouchbaseSearchClient(SearchableBinaryRepository repository) {
+        this.bucket = repository.getCouchbaseOperations().getCouchbaseBucket().async();
+        this.timeoutMs = repository.getCouchbaseOperations().getCouchbaseBucket().environment().searchTimeout();
+    }
+
+    @Override
+    public Observable<AsyncSearchQueryResult> query(SearchQuery query) {
+        return bucket.query(query, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
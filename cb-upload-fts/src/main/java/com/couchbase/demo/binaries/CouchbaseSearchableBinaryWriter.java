@@ -0,0 +1,323 @@
+package com.couchbase.demo.binaries;
+
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.subdoc.multi.Lookup;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.ByteBufOutputStream;
+import com.couchbase.client.deps.io.netty.buffer.PooledByteBufAllocator;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.MutationState;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.RawJsonDocument;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.CASMismatchException;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.error.subdoc.MultiMutationException;
+import com.couchbase.client.java.error.subdoc.PathExistsException;
+import com.couchbase.client.java.error.subdoc.PathMismatchException;
+import com.couchbase.client.java.error.subdoc.PathNotFoundException;
+import com.couchbase.client.java.subdoc.AsyncMutateInBuilder;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+import com.couchbase.client.java.subdoc.SubdocOptionsBuilder;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.couchbase.core.convert.CouchbaseConverter;
+import org.springframework.data.couchbase.core.convert.translation.TranslationService;
+import org.springframework.data.couchbase.core.mapping.CouchbaseDocument;
+import org.springframework.stereotype.Component;
+import rx.Observable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link SearchableBinary} documents straight through the async bucket, using the same mapping as
+ * the Spring Data repository, so batches are written concurrently instead of one round trip per document.
+ */
+@Component
+@Profile("!offline")
+public class CouchbaseSearchableBinaryWriter implements SearchableBinaryWriter {
+    private static final int MAX_CAS_ATTEMPTS = 5;
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final SubdocOptionsBuilder CREATE_PATH = SubdocOptionsBuilder.builder().createPath(true);
+
+    private final AsyncBucket bucket;
+    private final long timeoutMs;
+    private final CouchbaseConverter converter;
+    private final TranslationService translationService;
+
+    @Autowired
+    public CouchbaseSearchableBinaryWriter(SearchableBinaryRepository repository, TranslationService translationService) {
+        this.bucket = repository.getCouchbaseOperations().getCouchbaseBucket().async();
+        this.timeoutMs = repository.getCouchbaseOperations().getCouchbaseBucket().environment().kvTimeout();
+        this.converter = repository.getCouchbaseOperations().getConverter();
+        this.translationService = translationService;
+    }
+
+    @Override
+    public Map<String, Throwable> upsertAll(List<SearchableBinary> docs, int concurrency) {
+        return Observable.from(docs)
+                .flatMap(doc -> bucket.upsert(encode(doc))
+                        .timeout(timeoutMs, TimeUnit.MILLISECONDS)
+                        .map(written -> Optional.<Map.Entry<String, Throwable>>empty())
+                        .onErrorReturn(error -> Optional.of(Map.entry(doc.getId(), error))), concurrency)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .toMap(Map.Entry::getKey, Map.Entry::getValue)
+                .toBlocking()
+                .single();
+    }
+
+    @Override
+    public Map<String, Throwable> insertAll(List<SearchableBinary> docs, int concurrency) {
+        return Observable.from(docs)
+                .flatMap(doc -> bucket.insert(encode(doc))
+                        .timeout(timeoutMs, TimeUnit.MILLISECONDS)
+                        .map(written -> Optional.<Map.Entry<String, Throwable>>empty())
+                        .onErrorReturn(error -> Optional.of(Map.entry(doc.getId(), error))), concurrency)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .toMap(Map.Entry::getKey, Map.Entry::getValue)
+                .toBlocking()
+                .single();
+    }
+
+    @Override
+    public Optional<MutationState> insert(SearchableBinary doc) {
+        return bucket.insert(encode(doc))
+                .timeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .map(written -> Optional.of(SessionToken.stateOf(written)))
+                .onErrorResumeNext(error -> error instanceof DocumentAlreadyExistsException ? Observable.just(Optional.<MutationState>empty())
+                        : Observable.error(error))
+                .toBlocking()
+                .single();
+    }
+
+    @Override
+    public boolean exists(String id) {
+        return bucket.exists(id).timeout(timeoutMs, TimeUnit.MILLISECONDS).toBlocking().single();
+    }
+
+    @Override
+    public Set<String> findExisting(Collection<String> ids, int concurrency) {
+        return Observable.from(ids)
+                .flatMap(id -> bucket.exists(id).timeout(timeoutMs, TimeUnit.MILLISECONDS)
+                        .filter(Boolean::booleanValue)
+                        .map(exists -> id), concurrency)
+                .collect(HashSet<String>::new, HashSet::add)
+                .toBlocking()
+                .single();
+    }
+
+    @Override
+    public Optional<MutationState> addReference(String id, String filename) {
+        return bucket.mutateIn(id)
+                .arrayAddUnique("references", filename, CREATE_PATH)
+                .execute(timeoutMs, TimeUnit.MILLISECONDS)
+                .map(written -> Optional.of(SessionToken.stateOf(written)))
+                .onErrorResumeNext(error -> error instanceof PathExistsException ? Observable.just(Optional.of(SessionToken.none()))
+                        : error instanceof DocumentDoesNotExistException ? Observable.just(Optional.<MutationState>empty())
+                        : Observable.error(error))
+                .toBlocking()
+                .single();
+    }
+
+    @Override
+    public Map<String, Throwable> addReferences(Map<String, String> idsByFilename, int concurrency) {
+        return Observable.from(idsByFilename.entrySet())
+                .flatMap(reference -> bucket.mutateIn(reference.getValue())
+                        .arrayAddUnique("references", reference.getKey(), CREATE_PATH)
+                        .execute(timeoutMs, TimeUnit.MILLISECONDS)
+                        .map(written -> Optional.<Map.Entry<String, Throwable>>empty())
+                        .onErrorReturn(error -> error instanceof PathExistsException ? Optional.empty()
+                                : Optional.of(Map.entry(reference.getKey(), error))), concurrency)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .toMap(Map.Entry::getKey, Map.Entry::getValue)
+                .toBlocking()
+                .single();
+    }
+
+    @Override
+    public boolean remove(String id) {
+        return bucket.remove(id)
+                .timeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .map(removed -> true)
+                .onErrorResumeNext(error -> error instanceof DocumentDoesNotExistException ? Observable.just(false)
+                        : Observable.error(error))
+                .toBlocking()
+                .single();
+    }
+
+    /**
+     * The array is read and the element removed by position under the CAS of that read, so a concurrent
+     * change of the references makes it start over.
+     */
+    @Override
+    public boolean removeReference(String id, String filename) {
+        for (int attempt = 1; ; attempt++) {
+            Optional<DocumentFragment<Lookup>> references = bucket.lookupIn(id)
+                    .get("references")
+                    .execute(timeoutMs, TimeUnit.MILLISECONDS)
+                    .map(Optional::of)
+                    .onErrorResumeNext(error -> error instanceof DocumentDoesNotExistException ? Observable.just(Optional.empty())
+                            : Observable.error(error))
+                    .toBlocking()
+                    .single();
+            if (references.isEmpty() || !references.get().exists("references")) {
+                return false;
+            }
+            int index = ((JsonArray) references.get().content("references")).toList().indexOf(filename);
+            if (index < 0) {
+                return false;
+            }
+            try {
+                return bucket.mutateIn(id)
+                        .remove("references[" + index + "]")
+                        .withCas(references.get().cas())
+                        .execute(timeoutMs, TimeUnit.MILLISECONDS)
+                        .map(written -> true)
+                        .toBlocking()
+                        .single();
+            } catch (CASMismatchException e) {
+                if (attempt == MAX_CAS_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Optional<SearchableBinary> lookup(String id, Collection<String> fields) {
+        return lookupAsync(id, fields)
+                .map(Optional::of)
+                .toBlocking()
+                .singleOrDefault(Optional.empty());
+    }
+
+    @Override
+    public Map<String, SearchableBinary> lookupAll(Collection<String> ids, Collection<String> fields, int concurrency) {
+        return Observable.from(ids)
+                .flatMap(id -> lookupAsync(id, fields), concurrency)
+                .toMap(SearchableBinary::getId)
+                .toBlocking()
+                .single();
+    }
+
+    private Observable<SearchableBinary> lookupAsync(String id, Collection<String> fields) {
+        return bucket.lookupIn(id)
+                .get(fields.toArray(new String[0]))
+                .execute(timeoutMs, TimeUnit.MILLISECONDS)
+                .map(fragment -> {
+                    JsonObject json = JsonObject.create();
+                    fields.stream().filter(fragment::exists).forEach(field -> json.put(field, fragment.content(field)));
+                    return decode(id, json);
+                })
+                .onErrorResumeNext(error -> error instanceof DocumentDoesNotExistException ? Observable.empty()
+                        : Observable.error(error));
+    }
+
+    @Override
+    public boolean mutate(String id, Map<String, Object> valuesByPath) {
+        AsyncMutateInBuilder mutation = bucket.mutateIn(id);
+        valuesByPath.forEach((path, value) -> {
+            if (value == null) {
+                mutation.remove(path);
+            } else {
+                mutation.upsert(path, toJson(value), CREATE_PATH);
+            }
+        });
+        return mutation.execute(timeoutMs, TimeUnit.MILLISECONDS)
+                .map(written -> true)
+                .onErrorResumeNext(error -> error instanceof DocumentDoesNotExistException ? Observable.just(false)
+                        : Observable.error(pathFailure(id, error)))
+                .toBlocking()
+                .single();
+    }
+
+    /**
+     * A mutation of several paths fails with a {@link MultiMutationException} carrying the status of the first
+     * failed path, which is translated to the exception a single path mutation throws.
+     */
+    private static Throwable pathFailure(String id, Throwable error) {
+        if (!(error instanceof MultiMutationException)) {
+            return error;
+        }
+        MultiMutationException failure = (MultiMutationException) error;
+        String path = failure.firstFailureSpec().path();
+        if (failure.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_NOT_FOUND) {
+            return new PathNotFoundException(id, path);
+        }
+        if (failure.firstFailureStatus() == ResponseStatus.SUBDOC_PATH_MISMATCH) {
+            return new PathMismatchException(id, path);
+        }
+        return error;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toJson(Object value) {
+        if (value instanceof Map) {
+            return JsonObject.from((Map<String, ?>) value);
+        }
+        if (value instanceof List) {
+            return JsonArray.from((List<?>) value);
+        }
+        return value;
+    }
+
+    private SearchableBinary decode(String id, JsonObject json) {
+        CouchbaseDocument source = new CouchbaseDocument(id);
+        translationService.decode(json.toString(), source);
+        return converter.read(SearchableBinary.class, source);
+    }
+
+    /**
+     * A document carrying its extracted text is encoded without it, then the text is streamed as the body
+     * straight into the buffer sent to the server, from memory or its spill file. The buffer is a pooled direct
+     * one, so the serialized document, up to 3 bytes per character of text, is held off heap until the SDK
+     * releases it once sent: at most one per write in flight, {@code concurrency} of them for a batch.
+     */
+    private Document<?> encode(SearchableBinary doc) {
+        CouchbaseDocument target = new CouchbaseDocument();
+        converter.write(doc, target);
+        String encoded = translationService.encode(target);
+        if (doc.getText() == null) {
+            return RawJsonDocument.create(target.getId(), target.getExpiration(), encoded);
+        }
+        ByteBuf content = PooledByteBufAllocator.DEFAULT.ioBuffer((int) Math.min(Integer.MAX_VALUE, encoded.length() + doc.getText().length() + 64));
+        try (JsonParser fields = JSON.createParser(encoded);
+             JsonGenerator json = JSON.createGenerator((OutputStream) new ByteBufOutputStream(content));
+             Reader body = doc.getText().openReader()) {
+            fields.nextToken();
+            json.writeStartObject();
+            while (fields.nextToken() == JsonToken.FIELD_NAME) {
+                json.copyCurrentStructure(fields);
+            }
+            json.writeFieldName("body");
+            json.writeString(body, -1);
+            json.writeEndObject();
+        } catch (IOException e) {
+            content.release();
+            throw new UncheckedIOException("Failed to encode " + target.getId(), e);
+        } catch (RuntimeException e) {
+            content.release();
+            throw e;
+        }
+        return SerializedJsonDocument.create(target.getId(), target.getExpiration(), content);
+    }
+}
@@ -0,0 +1,43 @@
+package com.couchbase.demo.binaries;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+/**
+ * Outcome of saving one upload as part of a batch.
+ */
+@Value
+public class SaveResult {
+    String filename;
+    String documentId;
+    /**
+     * The content was already indexed, only the file name was added to its references
+     */
+    boolean duplicate;
+    String error;
+    /**
+     * {@link SessionToken} of the write, for searches which must see it
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String sessionToken;
+
+    public static SaveResult success(String filename, String documentId) {
+        return new SaveResult(filename, documentId, false, null, null);
+    }
+
+    public static SaveResult duplicate(String filename, String documentId) {
+        return new SaveResult(filename, documentId, true, null, null);
+    }
+
+    public static SaveResult failure(String filename, String documentId, Throwable cause) {
+        return new SaveResult(filename, documentId, false, cause.getClass().getSimpleName() + ": " + cause.getMessage(), null);
+    }
+
+    public SaveResult withSessionToken(String sessionToken) {
+        return new SaveResult(filename, documentId, duplicate, error, sessionToken);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
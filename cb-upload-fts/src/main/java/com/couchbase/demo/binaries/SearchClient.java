@@ -0,0 +1,16 @@
+package com.couchbase.demo.binaries;
+
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.result.AsyncSearchQueryResult;
+import rx.Observable;
+
+/**
+ * Runs full text searches without blocking, see {@link CouchbaseSearchClient}.
+ */
+public interface SearchClient {
+
+    /**
+     * @return the result of the query, or an error once the search timeout is over
+     */
+    Observable<AsyncSearchQueryResult> query(SearchQuery query);
+}
@@ -0,0 +1,54 @@
+package com.couchbase.demo.binaries;
+
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position of a page in a result set. When sorted on a field every document has, the cursor holds the sort
+ * value of the last hit returned and the ids already returned with that value, so the next page is a range
+ * query starting at that value instead of skipping all the previous hits. When sorted by score, or on a
+ * field some documents lack such as {@code metadata.createdAt}, it falls back to an offset.
+ */
+@Value
+class SearchCursor {
+    int from;
+    String lastValue;
+    List<String> seen;
+
+    static SearchCursor offset(int from) {
+        return new SearchCursor(from, null, List.of());
+    }
+
+    static SearchCursor after(String lastValue, List<String> seen) {
+        return new SearchCursor(0, lastValue, seen);
+    }
+
+    boolean isKeyset() {
+        return lastValue != null;
+    }
+
+    String encode() {
+        JsonObject json = JsonObject.create().put("from", from).put("seen", JsonArray.from(seen));
+        if (lastValue != null) {
+            json.put("after", lastValue);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static SearchCursor decode(String token) {
+        try {
+            JsonObject json = JsonObject.fromJson(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+            List<String> seen = new ArrayList<>();
+            json.getArray("seen").forEach(id -> seen.add(String.valueOf(id)));
+            return new SearchCursor(json.getInt("from"), json.getString("after"), seen);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid search cursor", e);
+        }
+    }
+}
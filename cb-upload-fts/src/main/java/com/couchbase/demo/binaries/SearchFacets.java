@@ -0,0 +1,146 @@
+package com.couchbase.demo.binaries;
+
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.facet.NumericRangeFacet;
+import com.couchbase.client.java.search.facet.SearchFacet;
+import com.couchbase.client.java.search.queries.AbstractFtsQuery;
+import com.couchbase.client.java.search.queries.NumericRangeQuery;
+import com.couchbase.client.java.search.queries.TermQuery;
+import com.couchbase.client.java.search.result.facets.FacetResult;
+import com.couchbase.client.java.search.result.facets.NumericRangeFacetResult;
+import com.couchbase.client.java.search.result.facets.TermFacetResult;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * The facets computed along with the hits: document types, authors and how recently the documents were
+ * registered. The values picked from these facets are turned back into filters of the search.
+ */
+final class SearchFacets {
+    static final String DOC_TYPE = "docType";
+    static final String AUTHOR = "author";
+    static final String REGISTERED_AT = "registeredAt";
+
+    /**
+     * Term facets and the keyword analyzed fields they count, see assets/index-binarySearch.json
+     */
+    private static final Map<String, String> TERM_FIELDS = Map.of(DOC_TYPE, "docType", AUTHOR, "metadata.authorFacet");
+
+    /**
+     * Registration periods, from the most recent. registeredAt is indexed as epoch milliseconds, so these
+     * are numeric ranges rather than date ranges.
+     */
+    private enum Period {
+        DAY("day", Duration.ofDays(1)),
+        WEEK("week", Duration.ofDays(7)),
+        MONTH("month", Duration.ofDays(30)),
+        YEAR("year", Duration.ofDays(365)),
+        OLDER("older", null);
+
+        private final String name;
+        private final Duration age;
+
+        Period(String name, Duration age) {
+            this.name = name;
+            this.age = age;
+        }
+
+        /**
+         * Inclusive lower bound, null for the oldest period
+         */
+        Double min(long now) {
+            return age == null ? null : (double) (now - age.toMillis());
+        }
+
+        /**
+         * Exclusive upper bound, null for the most recent period
+         */
+        Double max(long now) {
+            return ordinal() == 0 ? null : values()[ordinal() - 1].min(now);
+        }
+
+        static Period of(String name) {
+            for (Period period : values()) {
+                if (period.name.equals(name)) {
+                    return period;
+                }
+            }
+            throw new IllegalArgumentException("Unknown " + REGISTERED_AT + " period " + name + ", expected day, week, month, year or older");
+        }
+    }
+
+    private SearchFacets() {
+    }
+
+    /**
+     * The time periods are relative to, rounded to the minute so that repeated searches ask for the same ranges.
+     */
+    static long now() {
+        long now = System.currentTimeMillis();
+        return now - now % 60_000;
+    }
+
+    static Map<String, SearchFacet> facets(int size, long now) {
+        Map<String, SearchFacet> facets = new LinkedHashMap<>();
+        TERM_FIELDS.forEach((name, field) -> facets.put(name, SearchFacet.term(field, size)));
+        NumericRangeFacet registeredAt = SearchFacet.numeric(REGISTERED_AT, Period.values().length);
+        for (Period period : Period.values()) {
+            registeredAt.addRange(period.name, period.min(now), period.max(now));
+        }
+        facets.put(REGISTERED_AT, registeredAt);
+        return facets;
+    }
+
+    /**
+     * One query per filtered facet, matching any of its picked values.
+     *
+     * @throws IllegalArgumentException for an unknown facet or period
+     */
+    static List<AbstractFtsQuery> filters(Map<String, List<String>> filters, long now) {
+        List<AbstractFtsQuery> queries = new ArrayList<>();
+        filters.forEach((name, values) -> {
+            if (values == null || values.isEmpty()) {
+                return;
+            }
+            AbstractFtsQuery[] matches = values.stream().map(value -> match(name, value, now)).toArray(AbstractFtsQuery[]::new);
+            queries.add(matches.length == 1 ? matches[0] : SearchQuery.disjuncts(matches));
+        });
+        return queries;
+    }
+
+    private static AbstractFtsQuery match(String name, String value, long now) {
+        if (REGISTERED_AT.equals(name)) {
+            Period period = Period.of(value);
+            NumericRangeQuery range = SearchQuery.numericRange().field(REGISTERED_AT);
+            if (period.min(now) != null) {
+                range.min(period.min(now), true);
+            }
+            if (period.max(now) != null) {
+                range.max(period.max(now), false);
+            }
+            return range;
+        }
+        String field = TERM_FIELDS.get(name);
+        if (field == null) {
+            throw new IllegalArgumentException("Unknown facet " + name + ", expected any of " + TERM_FIELDS.keySet() + " or " + REGISTERED_AT);
+        }
+        return new TermQuery(value).field(field);
+    }
+
+    static Map<String, SearchResult.Facet> toResult(List<FacetResult> results) {
+        Map<String, SearchResult.Facet> facets = new LinkedHashMap<>();
+        for (FacetResult result : results) {
+            SearchResult.Facet facet = new SearchResult.Facet(result.field(), result.total(), result.missing(), result.other());
+            if (result instanceof TermFacetResult) {
+                ((TermFacetResult) result).terms()
+                        .forEach(term -> facet.getBuckets().add(new SearchResult.Bucket(term.name(), term.count(), null, null)));
+            } else if (result instanceof NumericRangeFacetResult) {
+                ((NumericRangeFacetResult) result).numericRanges()
+                        .forEach(range -> facet.getBuckets().add(new SearchResult.Bucket(range.name(), range.count(), range.min(), range.max())));
+            }
+            facets.put(result.name(), facet);
+        }
+        return facets;
+    }
+}
@@ -0,0 +1,208 @@
+package com.couchbase.demo.binaries;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Owns the full text index the searches run on. At startup, the index of the configured profile and version
+ * is created unless it exists, and searches go through an alias pointing at it. When the version or profile
+ * changes, the new index is built next to the one in use and the alias is switched once it caught up, so
+ * searches keep being answered while it builds.
+ */
+@Component
+@ConditionalOnProperty(name = "search.index.managed", havingValue = "true", matchIfMissing = true)
+public class SearchIndexManager implements ApplicationRunner {
+    private final Logger LOGGER = LoggerFactory.getLogger(SearchIndexManager.class);
+    private static final String ALIAS_TYPE = "fulltext-alias";
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(10);
+
+    private final SearchProperties.Index properties;
+    private final String bucketName;
+    private final RestTemplate rest;
+    private final ObjectMapper mapper;
+    private volatile String searchedIndex;
+
+    @Autowired
+    public SearchIndexManager(SearchableBinaryRepository repository, SearchProperties searchProperties,
+                              RestTemplateBuilder restTemplateBuilder, ObjectMapper mapper) {
+        this.properties = searchProperties.getIndex();
+        this.bucketName = repository.getCouchbaseOperations().getCouchbaseBucket().name();
+        RestTemplateBuilder builder = restTemplateBuilder.rootUri(properties.getUrl());
+        if (properties.getUsername() != null) {
+            builder = builder.basicAuthentication(properties.getUsername(), properties.getPassword());
+        }
+        this.rest = builder.build();
+        this.mapper = mapper;
+    }
+
+    /**
+     * A search service which can't be reached doesn't prevent the application from starting, searches then
+     * run on whatever the alias name designates.
+     */
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        try {
+            provision();
+        } catch (RestClientException e) {
+            LOGGER.warn("Could not provision search index {} on {}", properties.getIndexName(), properties.getUrl(), e);
+        }
+    }
+
+    /**
+     * @return the index the alias currently designates, empty if unknown or if it designates several
+     */
+    public Optional<String> getSearchedIndex() {
+        return Optional.ofNullable(searchedIndex);
+    }
+
+    private void provision() throws IOException {
+        String indexName = properties.getIndexName();
+        ObjectNode definition = definition(indexName);
+        Optional<JsonNode> index = find(indexName);
+        if (index.isEmpty()) {
+            put(indexName, definition, null);
+            LOGGER.info("Created search index {}: {} profile, {} partitions", indexName, properties.getProfile(), properties.getPartitions());
+        } else if (!definition.path("params").path("mapping").path("types").equals(index.get().path("params").path("mapping").path("types"))
+                || definition.path("planParams").path("indexPartitions").asInt() != index.get().path("planParams").path("indexPartitions").asInt()) {
+            LOGGER.warn("Search index {} doesn't match the {} profile with {} partitions, increase search.index.version to rebuild it",
+                    indexName, properties.getProfile(), properties.getPartitions());
+        }
+
+        String aliasName = properties.getAlias();
+        Optional<JsonNode> alias = find(aliasName);
+        if (alias.isEmpty()) {
+            put(aliasName, aliasOf(aliasName, indexName), null);
+            searchedIndex = indexName;
+            LOGGER.info("Created search alias {} of {}", aliasName, indexName);
+            return;
+        }
+        if (!ALIAS_TYPE.equals(alias.get().path("type").asText())) {
+            LOGGER.warn("{} is an index, not an alias: searches keep running on it until it is deleted and the application restarted", aliasName);
+            return;
+        }
+        List<String> targets = new ArrayList<>();
+        alias.get().path("params").path("targets").fieldNames().forEachRemaining(targets::add);
+        searchedIndex = targets.size() == 1 ? targets.get(0) : null;
+        if (!targets.equals(List.of(indexName))) {
+            String uuid = alias.get().path("uuid").asText();
+            Thread swap = new Thread(() -> swapWhenBuilt(aliasName, uuid, targets, indexName), "search-index-swap");
+            swap.setDaemon(true);
+            swap.start();
+        }
+    }
+
+    /**
+     * Switches the alias over to the new index once it holds at least as many documents as the indexes
+     * searched so far, and stopped growing since the previous check.
+     */
+    private void swapWhenBuilt(String aliasName, String uuid, List<String> targets, String indexName) {
+        LOGGER.info("Building search index {}, alias {} stays on {} meanwhile", indexName, aliasName, targets);
+        Instant deadline = Instant.now().plus(properties.getBuildTimeout());
+        long previous = -1;
+        try {
+            while (Instant.now().isBefore(deadline)) {
+                Thread.sleep(POLL_INTERVAL.toMillis());
+                long expected = 0;
+                for (String target : targets) {
+                    expected += count(target);
+                }
+                long built = count(indexName);
+                if (built >= expected && built == previous) {
+                    put(aliasName, aliasOf(aliasName, indexName), uuid);
+                    searchedIndex = indexName;
+                    LOGGER.info("Search alias {} switched from {} to {}, the former can be deleted", aliasName, targets, indexName);
+                    return;
+                }
+                previous = built;
+            }
+            LOGGER.warn("Search index {} didn't catch up within {}, alias {} left on {}", indexName, properties.getBuildTimeout(), aliasName, targets);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RestClientException e) {
+            LOGGER.warn("Could not switch search alias {} to {}", aliasName, indexName, e);
+        }
+    }
+
+    /**
+     * The index definition of the profile, bound to the bucket, named after the profile and the version.
+     */
+    private ObjectNode definition(String indexName) throws IOException {
+        String resource = "fts/binarySearch-" + properties.getProfile().name().toLowerCase() + ".json";
+        try (InputStream inputStream = new ClassPathResource(resource).getInputStream()) {
+            ObjectNode definition = (ObjectNode) mapper.readTree(inputStream);
+            definition.put("name", indexName);
+            definition.put("sourceName", bucketName);
+            ((ObjectNode) definition.with("planParams"))
+                    .put("indexPartitions", properties.getPartitions())
+                    .put("numReplicas", properties.getReplicas());
+            return definition;
+        }
+    }
+
+    private ObjectNode aliasOf(String aliasName, String indexName) {
+        ObjectNode alias = mapper.createObjectNode()
+                .put("type", ALIAS_TYPE)
+                .put("name", aliasName)
+                .put("sourceType", "nil");
+        alias.with("params").with("targets").putObject(indexName);
+        return alias;
+    }
+
+    /**
+     * @return the definition of the index or alias, empty if there is none with that name
+     */
+    private Optional<JsonNode> find(String name) {
+        try {
+            JsonNode response = rest.getForObject("/api/index/{name}", JsonNode.class, name);
+            return Optional.ofNullable(response).map(body -> body.get("indexDef"));
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND || e.getStatusCode() == HttpStatus.BAD_REQUEST) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    private long count(String indexName) {
+        JsonNode response = rest.getForObject("/api/index/{name}/count", JsonNode.class, indexName);
+        return response == null ? 0 : response.path("count").asLong();
+    }
+
+    /**
+     * Creates the index or alias, or replaces the one whose uuid is given.
+     */
+    private void put(String name, ObjectNode definition, String previousUuid) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (previousUuid == null) {
+            rest.put("/api/index/{name}", new HttpEntity<>(definition, headers), name);
+        } else {
+            rest.put("/api/index/{name}?prevIndexUUID={uuid}", new HttpEntity<>(definition, headers), name, previousUuid);
+        }
+    }
+}
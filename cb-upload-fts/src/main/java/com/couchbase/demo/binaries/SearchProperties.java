@@ -0,0 +1,266 @@
+package com.couchbase.demo.binaries;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties("search")
+public class SearchProperties {
+
+    /**
+     * Maximum number of searches running on FTS at the same time, further searches are rejected right away
+     */
+    private int maxInFlight = 256;
+
+    /**
+     * Cache of search results
+     */
+    private final Cache cache = new Cache();
+
+    /**
+     * Number of values returned by the docType and author facets
+     */
+    private int facetSize = 10;
+
+    /**
+     * Full text index provisioned by the application
+     */
+    private final Index index = new Index();
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getFacetSize() {
+        return facetSize;
+    }
+
+    public void setFacetSize(int facetSize) {
+        this.facetSize = facetSize;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Index getIndex() {
+        return index;
+    }
+
+    public static class Cache {
+
+        /**
+         * Whether search results are cached
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum number of cached results, least recently used ones are evicted first
+         */
+        private int maxEntries = 1000;
+
+        /**
+         * How long a result is served from the cache
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+
+        /**
+         * How long the facet counts of an unfiltered search are reused for its other pages and sorts
+         */
+        private Duration facetTtl = Duration.ofSeconds(10);
+
+        /**
+         * How long the index is given to catch up with the writes which invalidated the cache: the results of
+         * searches started within it are returned but not cached
+         */
+        private Duration settleTime = Duration.ofSeconds(5);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getFacetTtl() {
+            return facetTtl;
+        }
+
+        public void setFacetTtl(Duration facetTtl) {
+            this.facetTtl = facetTtl;
+        }
+
+        public Duration getSettleTime() {
+            return settleTime;
+        }
+
+        public void setSettleTime(Duration settleTime) {
+            this.settleTime = settleTime;
+        }
+    }
+
+    public static class Index {
+
+        /**
+         * Index definitions, see src/main/resources/fts. The lean profile doesn't store the body in the index,
+         * so searches return no highlighted fragments; the full profile does and is about twice as big.
+         */
+        public enum Profile { LEAN, FULL }
+
+        /**
+         * Whether the index and its alias are created or checked at startup
+         */
+        private boolean managed = true;
+
+        /**
+         * Name searches are run against: an alias of the index built from the profile
+         */
+        private String alias = "binarySearch";
+
+        private Profile profile = Profile.LEAN;
+
+        /**
+         * Version of the definition, increase it to build a new index and switch the alias once it caught up
+         */
+        private int version = 1;
+
+        /**
+         * Number of index partitions spread over the search nodes
+         */
+        private int partitions = 1;
+
+        private int replicas = 0;
+
+        /**
+         * Search service REST endpoint
+         */
+        private String url = "http://localhost:8094";
+
+        /**
+         * User allowed to manage search indexes of the bucket
+         */
+        private String username;
+
+        private String password;
+
+        /**
+         * How long a new index may take to catch up before the alias is switched to it
+         */
+        private Duration buildTimeout = Duration.ofHours(2);
+
+        public boolean isManaged() {
+            return managed;
+        }
+
+        public void setManaged(boolean managed) {
+            this.managed = managed;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public void setAlias(String alias) {
+            this.alias = alias;
+        }
+
+        public Profile getProfile() {
+            return profile;
+        }
+
+        public void setProfile(Profile profile) {
+            this.profile = profile;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public void setVersion(int version) {
+            this.version = version;
+        }
+
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public void setPartitions(int partitions) {
+            this.partitions = partitions;
+        }
+
+        public int getReplicas() {
+            return replicas;
+        }
+
+        public void setReplicas(int replicas) {
+            this.replicas = replicas;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public Duration getBuildTimeout() {
+            return buildTimeout;
+        }
+
+        public void setBuildTimeout(Duration buildTimeout) {
+            this.buildTimeout = buildTimeout;
+        }
+
+        /**
+         * Name of the index built from the current profile and version, e.g. binarySearch_lean_v1
+         */
+        public String getIndexName() {
+            return alias + "_" + profile.name().toLowerCase() + "_v" + version;
+        }
+
+        /**
+         * Whether the body is stored in the index, which highlighting requires
+         */
+        public boolean isBodyStored() {
+            return profile == Profile.FULL;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.couchbase.demo.binaries;
+
+public class SearchRejectedException extends RuntimeException {
+
+    public SearchRejectedException(String message) {
+        super(message);
+    }
+
+    public SearchRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
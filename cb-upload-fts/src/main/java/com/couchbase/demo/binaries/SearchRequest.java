@@ -0,0 +1,141 @@
+package com.couchbase.demo.binaries;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.Value;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Search parameters. Pages are selected either with {@code from}/{@code size}, or by passing back the
+ * {@code next} cursor of the previous {@link SearchResult}, which keeps the cost of deep pages constant
+ * when sorting on a field.
+ */
+@NoArgsConstructor
+@Data
+public class SearchRequest {
+    public static final int MAX_SIZE = 100;
+
+    @NotBlank
+    private String query;
+    @Min(0)
+    private int from = 0;
+    @Min(1)
+    @Max(MAX_SIZE)
+    private int size = 10;
+    /**
+     * Sort keys ({@code score}, {@code registeredAt}, {@code createdAt}), prefixed with '-' for descending order.
+     * Defaults to descending score.
+     */
+    private List<String> sort = new ArrayList<>();
+    private String cursor;
+    /**
+     * Facet values to filter on, by facet name ({@code docType}, {@code author} or {@code registeredAt}).
+     * A document matches any of the values of a facet, and every filtered facet.
+     */
+    private Map<String, List<String>> filters = new HashMap<>();
+    /**
+     * Whether the facet counts are returned with the hits
+     */
+    private boolean facets = true;
+    /**
+     * Session tokens of the client's own uploads ({@code sessionToken} of their ingestion job). The search
+     * waits until the index has caught up with these writes, and bypasses the cache.
+     */
+    private List<String> consistentWith = new ArrayList<>();
+
+    @JsonIgnore
+    public boolean isConsistent() {
+        return consistentWith != null && !consistentWith.isEmpty();
+    }
+
+    @JsonIgnore
+    public boolean isFiltered() {
+        return filters != null && filters.values().stream().anyMatch(values -> values != null && !values.isEmpty());
+    }
+
+    public static SearchRequest of(String query) {
+        SearchRequest request = new SearchRequest();
+        request.setQuery(query);
+        return request;
+    }
+
+    @JsonIgnore
+    public List<Order> getOrders() {
+        if (sort == null || sort.isEmpty()) {
+            return List.of(new Order(SortKey.SCORE, true));
+        }
+        return sort.stream().map(Order::parse).collect(Collectors.toList());
+    }
+
+    public enum SortKey {
+        SCORE("score", null, false),
+        REGISTERED_AT("registeredAt", "registeredAt", true),
+        // metadata the file may not carry
+        CREATED_AT("createdAt", "metadata.createdAt", false);
+
+        private final String name;
+        private final String field;
+        private final boolean keyset;
+
+        SortKey(String name, String field, boolean keyset) {
+            this.name = name;
+            this.field = field;
+            this.keyset = keyset;
+        }
+
+        /**
+         * @return the index field sorted on, null when sorting by relevance
+         */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * @return whether every document has the field, so a page can start at the value of the last hit. A range
+         * on a field some documents lack would never return them, so those sorts are paged by offset.
+         */
+        boolean isKeyset() {
+            return keyset;
+        }
+
+        String valueOf(SearchResult.SearchHit hit) {
+            switch (this) {
+                case REGISTERED_AT:
+                    return hit.getRegisteredAt() == null ? null : String.valueOf(hit.getRegisteredAt());
+                case CREATED_AT:
+                    return hit.getCreatedAt();
+                default:
+                    return String.valueOf(hit.getScore());
+            }
+        }
+
+        static SortKey of(String name) {
+            for (SortKey key : values()) {
+                if (key.name.equalsIgnoreCase(name)) {
+                    return key;
+                }
+            }
+            throw new IllegalArgumentException("Unknown sort key " + name);
+        }
+    }
+
+    @Value
+    public static class Order {
+        SortKey key;
+        boolean descending;
+
+        static Order parse(String value) {
+            boolean descending = value.startsWith("-");
+            return new Order(SortKey.of(descending ? value.substring(1) : value), descending);
+        }
+    }
+}
@@ -2,12 +2,16 @@ package com.couchbase.demo.binaries;
 
 import com.couchbase.client.java.search.result.SearchQueryResult;
 import com.couchbase.client.java.search.result.SearchQueryRow;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.apache.logging.log4j.util.Strings;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @NoArgsConstructor
@@ -15,14 +19,61 @@ import java.util.stream.Collectors;
 public class SearchResult {
     private Long total;
     private final List<SearchHit> hits = new ArrayList<>();
+    /**
+     * Cursor of the next page, null when this is the last one
+     */
+    private String next;
+    /**
+     * Counts by facet name: {@code docType}, {@code author} and {@code registeredAt}
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, Facet> facets = new LinkedHashMap<>();
 
     public static SearchResult from(SearchQueryResult result) {
+        return from(result.metrics().totalHits(), result.hits());
+    }
+
+    public static SearchResult from(long total, List<SearchQueryRow> hits) {
         SearchResult val = new SearchResult();
-        val.setTotal(result.metrics().totalHits());
-        val.getHits().addAll(result.hits().stream().map(SearchHit::from).collect(Collectors.toList()));
+        val.setTotal(total);
+        val.getHits().addAll(hits.stream().map(SearchHit::from).collect(Collectors.toList()));
         return val;
     }
 
+    @NoArgsConstructor
+    @Data
+    public static class Facet {
+        private String field;
+        private long total;
+        private long missing;
+        /**
+         * Matches with values past the returned buckets
+         */
+        private long other;
+        private final List<Bucket> buckets = new ArrayList<>();
+
+        public Facet(String field, long total, long missing, long other) {
+            this.field = field;
+            this.total = total;
+            this.missing = missing;
+            this.other = other;
+        }
+    }
+
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Bucket {
+        /**
+         * The term, or the name of the range, to filter on
+         */
+        private String name;
+        private long count;
+        private Double min;
+        private Double max;
+    }
+
     @NoArgsConstructor
     @Data
     static class SearchHit {
@@ -0,0 +1,199 @@
+package com.couchbase.demo.binaries;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded LRU cache of search results with a time to live. Every ingestion bumps the cache generation,
+ * dropping the cached results and discarding any result computed before the bump. The facet counts of
+ * unfiltered searches are also kept on their own, by query, so the next pages of a search and a
+ * different sort don't compute them again.
+ * <p>
+ * The bump happens once the documents are written, but FTS indexes them asynchronously, so a search started
+ * right after it can still run against the previous index. Searches started within
+ * {@code search.cache.settle-time} of the last bump are therefore not cached. A write the index takes longer
+ * than that to catch up with can still be missing from a cached result, for at most {@code search.cache.ttl}
+ * ({@code search.cache.facet-ttl} for the facet counts).
+ */
+@Component
+public class SearchResultCache {
+    private final SearchProperties.Cache properties;
+    private final Map<Key, Entry> entries;
+    private final Map<String, FacetsEntry> facets;
+    private final AtomicLong generation = new AtomicLong();
+    private long invalidatedAt;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public SearchResultCache(SearchProperties properties, MeterRegistry registry) {
+        this.properties = properties.getCache();
+        this.invalidatedAt = System.nanoTime() - this.properties.getSettleTime().toNanos();
+        int maxEntries = this.properties.getMaxEntries();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.facets = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FacetsEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        FunctionCounter.builder("search.cache.requests", hits, AtomicLong::get).tag("result", "hit").register(registry);
+        FunctionCounter.builder("search.cache.requests", misses, AtomicLong::get).tag("result", "miss").register(registry);
+        Gauge.builder("search.cache.size", this, SearchResultCache::size).register(registry);
+    }
+
+    /**
+     * Returns the cached result for the key, or starts loading it (outside of any lock) and caches it once loaded.
+     */
+    public CompletableFuture<SearchResult> get(Key key, Supplier<CompletableFuture<SearchResult>> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.storedAt < properties.getTtl().toNanos()) {
+                hits.incrementAndGet();
+                return CompletableFuture.completedFuture(entry.result);
+            }
+        }
+        misses.incrementAndGet();
+        long loadingGeneration = generation.get();
+        return loader.get().whenComplete((result, error) -> {
+            if (error == null) {
+                synchronized (entries) {
+                    if (loadingGeneration == generation.get() && !settling(now)) {
+                        entries.put(key, new Entry(result, System.nanoTime()));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * The facet counts of the unfiltered search, null when not cached or older than {@code search.cache.facet-ttl}.
+     */
+    public Map<String, SearchResult.Facet> getFacets(String query) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        synchronized (entries) {
+            FacetsEntry entry = facets.get(Key.normalize(query));
+            return entry != null && System.nanoTime() - entry.storedAt < properties.getFacetTtl().toNanos() ? entry.facets : null;
+        }
+    }
+
+    /**
+     * Caches the facet counts of the unfiltered search, unless the cache was invalidated since {@code loadingGeneration}
+     * or the search started while the index was settling.
+     *
+     * @param loadingStartedAt {@link System#nanoTime()} when the search started
+     */
+    public void putFacets(String query, Map<String, SearchResult.Facet> counts, long loadingGeneration, long loadingStartedAt) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        synchronized (entries) {
+            if (loadingGeneration == generation.get() && !settling(loadingStartedAt)) {
+                facets.put(Key.normalize(query), new FacetsEntry(counts, System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Whether a search started at {@code loadingStartedAt} may run before the index caught up with the last invalidating write
+     */
+    private boolean settling(long loadingStartedAt) {
+        return loadingStartedAt - invalidatedAt < properties.getSettleTime().toNanos();
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Drops every cached result, called whenever documents are added or changed.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            invalidatedAt = System.nanoTime();
+            entries.clear();
+            facets.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Value
+    public static class Key {
+        String query;
+        int from;
+        int size;
+        List<String> sort;
+        String cursor;
+        Map<String, List<String>> filters;
+        boolean facets;
+        List<String> fields;
+
+        public static Key of(SearchRequest request, String... fields) {
+            Map<String, List<String>> filters = new TreeMap<>();
+            if (request.isFiltered()) {
+                request.getFilters().forEach((name, values) -> {
+                    if (values != null && !values.isEmpty()) {
+                        filters.put(name, values.stream().sorted().collect(Collectors.toList()));
+                    }
+                });
+            }
+            return new Key(normalize(request.getQuery()), request.getFrom(), request.getSize(),
+                    request.getSort() == null ? List.of() : List.copyOf(request.getSort()), request.getCursor(), filters,
+                    request.isFacets(), List.of(fields));
+        }
+
+        static String normalize(String query) {
+            return query.trim().replaceAll("\\s+", " ");
+        }
+    }
+
+    private static class FacetsEntry {
+        private final Map<String, SearchResult.Facet> facets;
+        private final long storedAt;
+
+        FacetsEntry(Map<String, SearchResult.Facet> facets, long storedAt) {
+            this.facets = facets;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private static class Entry {
+        private final SearchResult result;
+        private final long storedAt;
+
+        Entry(SearchResult result, long storedAt) {
+            this.result = result;
+            this.storedAt = storedAt;
+        }
+    }
+}
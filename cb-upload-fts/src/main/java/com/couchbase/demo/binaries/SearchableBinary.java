@@ -2,14 +2,19 @@ package com.couchbase.demo.binaries;
 
 import com.couchbase.client.java.repository.annotation.Field;
 import com.couchbase.client.java.repository.annotation.Id;
+import com.couchbase.demo.analysis.ExtractedText;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonUnwrapped;
 import lombok.*;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.couchbase.core.mapping.Document;
 
 import java.util.*;
 
 @Document
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Data
 @Builder
 @AllArgsConstructor
@@ -19,8 +24,44 @@ public class SearchableBinary {
 
     @Id
     private String id;
+    /**
+     * Id of the document this one is embedded in, when it was extracted from an attachment, an embedded
+     * file or an archive entry. A content embedded in several documents keeps the last one indexed
+     */
+    private String parentId;
+    /**
+     * Ids of the documents extracted from this one, see {@code analyzer.embedded.*}
+     */
+    private List<String> embedded;
     private String body;
+    /**
+     * Whether the body was cut at {@code analyzer.max-characters}, null for documents indexed before the flag
+     */
+    private Boolean truncated;
+    /**
+     * Extracted text not written yet, stored as the body straight from its buffer or spill file, see
+     * {@link #releaseText()}
+     */
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private ExtractedText text;
+    /**
+     * Documents extracted from this one and not written yet, each with its own parts
+     */
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private List<SearchableBinary> parts;
     private String reference;
+    private String contentHash;
+    /**
+     * Every file name this content was uploaded with
+     */
+    @Builder.Default
+    private List<String> references = new ArrayList<>();
     private String docType;
     @Field
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd HH:mm:ss")
@@ -30,21 +71,61 @@ public class SearchableBinary {
     @JsonUnwrapped
     private Metadata metadata;
 
+    /**
+     * Documents are keyed by content, so uploading the same file twice maps to the same document.
+     */
+    public static String idOf(String contentHash) {
+        return PREFIX_TYPE.concat(":").concat(contentHash);
+    }
+
+    /**
+     * Drops the extracted text of the document and of its parts once written, deleting their spill files if any.
+     */
+    public void releaseText() {
+        if (text != null) {
+            text.close();
+            text = null;
+        }
+        if (parts != null) {
+            parts.forEach(SearchableBinary::releaseText);
+        }
+    }
+
+    /**
+     * @return the parts of the document and their own parts, at any depth
+     */
+    public List<SearchableBinary> allParts() {
+        List<SearchableBinary> all = new ArrayList<>();
+        if (parts != null) {
+            for (SearchableBinary part : parts) {
+                all.add(part);
+                all.addAll(part.allParts());
+            }
+        }
+        return all;
+    }
+
     @Data
     @NoArgsConstructor
     @ToString
     public static class Metadata {
+        /**
+         * ISO-8601 UTC date time, such as {@code 2020-01-10T10:00:00Z}
+         */
         private String createdAt;
         private String lastUpdatedBy;
+        /**
+         * ISO-8601 UTC date time, such as {@code 2020-01-10T10:00:00Z}
+         */
         private String lastUpdatedAt;
         private String author;
-        private final List<String> keywords = new ArrayList<>();
+        private List<String> keywords = new ArrayList<>();
 
         @JsonUnwrapped
-        private final Map<String, String> others = new HashMap<>();
+        private Map<String, Object> others = new HashMap<>();
 
         @JsonUnwrapped
-        public Map<String,String> getOthers() {
+        public Map<String,Object> getOthers() {
             return others;
         }
     }
@@ -3,9 +3,16 @@ package com.couchbase.demo.binaries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.Valid;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("binaries")
 public class SearchableBinaryController {
@@ -18,13 +25,31 @@ public class SearchableBinaryController {
     }
 
     @GetMapping("/{docId}")
-    public ResponseEntity<SearchableBinary> get(@PathVariable("docId") String docId) {
-        return ResponseEntity.ok(service.findById(docId));
+    public ResponseEntity<SearchableBinary> get(@PathVariable("docId") String docId,
+                                                @RequestParam(value = "fields", required = false) List<String> fields) {
+        return ResponseEntity.of(service.findById(docId, fields));
+    }
+
+    @PatchMapping("/{docId}/metadata")
+    public ResponseEntity<SearchableBinary> updateMetadata(@PathVariable("docId") String docId, @RequestBody Map<String, Object> changes) {
+        return ResponseEntity.of(service.updateMetadata(docId, changes));
     }
 
     @PostMapping("searching")
-    public ResponseEntity<SearchResult> binarySearch(@RequestBody String content) {
-        LOGGER.info("Searching... {}",content);
-        return ResponseEntity.ok(service.binarySearch(content));
+    public CompletableFuture<ResponseEntity<SearchResult>> binarySearch(@Valid @RequestBody SearchRequest request) {
+        LOGGER.info("Searching... {}",request);
+        return service.binarySearch(request).thenApply(ResponseEntity::ok);
+    }
+
+    @ExceptionHandler(SearchRejectedException.class)
+    public ResponseEntity<String> handleSearchRejected(SearchRejectedException exc) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(exc.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException exc) {
+        return ResponseEntity.badRequest().body(exc.getMessage());
     }
 }
@@ -0,0 +1,99 @@
+package com.couchbase.demo.binaries;
+
+import com.couchbase.client.java.MutationState;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Reads and writes {@link SearchableBinary} documents field by field and in concurrent batches, see
+ * {@link CouchbaseSearchableBinaryWriter}.
+ */
+public interface SearchableBinaryWriter {
+
+    /**
+     * Upserts all the documents with at most {@code concurrency} requests in flight, replacing the stored ones.
+     *
+     * @return the failures indexed by document id, empty if every write succeeded
+     */
+    Map<String, Throwable> upsertAll(List<SearchableBinary> docs, int concurrency);
+
+    /**
+     * Inserts all the documents with at most {@code concurrency} requests in flight, leaving the ones already
+     * stored as they are.
+     *
+     * @return the failures indexed by document id, a {@link com.couchbase.client.java.error.DocumentAlreadyExistsException}
+     * for a document already stored; empty if every document was inserted
+     */
+    Map<String, Throwable> insertAll(List<SearchableBinary> docs, int concurrency);
+
+    /**
+     * Inserts the document unless one with the same id is already stored, which is left as it is.
+     *
+     * @return the state to search consistently with this write, see {@link SessionToken}; empty if the
+     * document was already stored
+     */
+    Optional<MutationState> insert(SearchableBinary doc);
+
+    boolean exists(String id);
+
+    /**
+     * @return the ids, among the given ones, of the documents already stored
+     */
+    Set<String> findExisting(Collection<String> ids, int concurrency);
+
+    /**
+     * Records one more file name for an already stored document, without reading or rewriting it.
+     *
+     * @return the state to search consistently with this write, which holds no token if the file name was
+     * already referenced; empty if the document doesn't exist
+     */
+    Optional<MutationState> addReference(String id, String filename);
+
+    /**
+     * Adds every file name to the references of its document id, with at most {@code concurrency} mutations in flight.
+     *
+     * @return the failures indexed by file name, empty if every reference was recorded
+     */
+    Map<String, Throwable> addReferences(Map<String, String> idsByFilename, int concurrency);
+
+    /**
+     * @return false if the document doesn't exist
+     */
+    boolean remove(String id);
+
+    /**
+     * Drops a file name from the references of a document, without losing a reference added concurrently.
+     *
+     * @return false if the document doesn't exist or doesn't reference the file
+     */
+    boolean removeReference(String id, String filename);
+
+    /**
+     * Reads only the given top level fields of a document, mapped as a partially filled {@link SearchableBinary}.
+     *
+     * @return empty if the document doesn't exist
+     */
+    Optional<SearchableBinary> lookup(String id, Collection<String> fields);
+
+    /**
+     * Reads the given top level fields of many documents, with at most {@code concurrency} lookups in flight.
+     *
+     * @return the partially filled documents indexed by id, missing the ids of documents which don't exist
+     */
+    Map<String, SearchableBinary> lookupAll(Collection<String> ids, Collection<String> fields, int concurrency);
+
+    /**
+     * Sets the given paths in place, a null value removes the path, without reading or rewriting the rest of the document.
+     * The mutation is atomic: nothing is written when one of the paths fails. Removing a missing path fails with a
+     * {@link com.couchbase.client.java.error.subdoc.PathNotFoundException}, setting a path under a value which isn't an
+     * object with a {@link com.couchbase.client.java.error.subdoc.PathMismatchException}, both naming the first failed
+     * path, however many paths are set.
+     *
+     * @return false if the document doesn't exist
+     */
+    boolean mutate(String id, Map<String, Object> valuesByPath);
+}
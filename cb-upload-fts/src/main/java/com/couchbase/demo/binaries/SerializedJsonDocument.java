@@ -0,0 +1,25 @@
+package com.couchbase.demo.binaries;
+
+import com.couchbase.client.core.message.kv.MutationToken;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.java.document.AbstractDocument;
+
+/**
+ * JSON content already serialized into a buffer, sent as it is with the JSON flags, so a large document is
+ * written without ever being a {@link String}. The buffer is released once the document is sent, see
+ * {@link SerializedJsonTranscoder}.
+ */
+public class SerializedJsonDocument extends AbstractDocument<ByteBuf> {
+
+    private SerializedJsonDocument(String id, int expiry, ByteBuf content, long cas, MutationToken mutationToken) {
+        super(id, expiry, content, cas, mutationToken);
+    }
+
+    public static SerializedJsonDocument create(String id, int expiry, ByteBuf content) {
+        return new SerializedJsonDocument(id, expiry, content, 0, null);
+    }
+
+    public static SerializedJsonDocument create(String id, int expiry, ByteBuf content, long cas, MutationToken mutationToken) {
+        return new SerializedJsonDocument(id, expiry, content, cas, mutationToken);
+    }
+}
@@ -0,0 +1,57 @@
+package com.couchbase.demo.binaries;
+
+import com.couchbase.client.core.lang.Tuple;
+import com.couchbase.client.core.lang.Tuple2;
+import com.couchbase.client.core.message.ResponseStatus;
+import com.couchbase.client.core.message.kv.MutationToken;
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.java.error.TranscodingException;
+import com.couchbase.client.java.transcoder.AbstractTranscoder;
+import com.couchbase.client.java.transcoder.TranscoderUtils;
+
+/**
+ * Hands the buffer of a {@link SerializedJsonDocument} to the client as it is, flagged as JSON like the
+ * documents written by Spring Data, instead of encoding a string into a new buffer.
+ */
+public class SerializedJsonTranscoder extends AbstractTranscoder<SerializedJsonDocument, ByteBuf> {
+
+    @Override
+    protected Tuple2<ByteBuf, Integer> doEncode(SerializedJsonDocument document) {
+        return Tuple.create(document.content(), TranscoderUtils.JSON_COMPAT_FLAGS);
+    }
+
+    @Override
+    protected SerializedJsonDocument doDecode(String id, ByteBuf content, long cas, int expiry, int flags, ResponseStatus status) {
+        if (!TranscoderUtils.hasJsonFlags(flags)) {
+            throw new TranscodingException("Flags (0x" + Integer.toHexString(flags) + ") indicate a non-JSON document for id " + id);
+        }
+        return newDocument(id, expiry, content, cas, null);
+    }
+
+    /**
+     * The buffer read is the content of the decoded document, its reader releases it
+     */
+    @Override
+    protected boolean shouldAutoReleaseOnDecode() {
+        return false;
+    }
+
+    /**
+     * Required by the interface, which deprecates it in favour of the overload taking a mutation token
+     */
+    @Override
+    @Deprecated
+    public SerializedJsonDocument newDocument(String id, int expiry, ByteBuf content, long cas) {
+        return SerializedJsonDocument.create(id, expiry, content, cas, null);
+    }
+
+    @Override
+    public SerializedJsonDocument newDocument(String id, int expiry, ByteBuf content, long cas, MutationToken mutationToken) {
+        return SerializedJsonDocument.create(id, expiry, content, cas, mutationToken);
+    }
+
+    @Override
+    public Class<SerializedJsonDocument> documentType() {
+        return SerializedJsonDocument.class;
+    }
+}
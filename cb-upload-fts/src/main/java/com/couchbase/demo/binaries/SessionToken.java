@@ -0,0 +1,70 @@
+package com.couchbase.demo.binaries;
+
+import com.couchbase.client.java.MutationState;
+import com.couchbase.client.java.document.Document;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.subdoc.DocumentFragment;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque token handed to the client who wrote a document, made of the mutation tokens (partition,
+ * partition uuid and sequence number) of its writes. A search given the token waits until the index has
+ * caught up with those writes, so the client reads its own writes while other searches don't wait at all.
+ */
+public final class SessionToken {
+
+    private SessionToken() {
+    }
+
+    /**
+     * @return the state of the write, without token when mutation tokens are disabled
+     */
+    static MutationState stateOf(Document<?> written) {
+        return written.mutationToken() == null ? none() : MutationState.from(written);
+    }
+
+    static MutationState stateOf(DocumentFragment<?> written) {
+        return written.mutationToken() == null ? none() : MutationState.from(written);
+    }
+
+    /**
+     * A state without any token, which doesn't make a search wait
+     */
+    public static MutationState none() {
+        return MutationState.from(JsonObject.create());
+    }
+
+    /**
+     * @return the token, null if the state holds no mutation token
+     */
+    public static String encode(MutationState state) {
+        if (isEmpty(state)) {
+            return null;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(state.export().toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Merges the tokens, keeping the latest write of every partition.
+     *
+     * @throws IllegalArgumentException if a token wasn't issued by {@link #encode(MutationState)}
+     */
+    public static MutationState decode(List<String> tokens) {
+        MutationState state = none();
+        for (String token : tokens) {
+            try {
+                state.add(MutationState.from(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid session token " + token, e);
+            }
+        }
+        return state;
+    }
+
+    static boolean isEmpty(MutationState state) {
+        return !state.iterator().hasNext();
+    }
+}
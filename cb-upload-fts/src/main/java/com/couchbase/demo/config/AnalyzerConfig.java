@@ -1,15 +1,44 @@
 package com.couchbase.demo.config;
 
-import org.apache.tika.Tika;
+import com.couchbase.demo.analysis.AnalyzerProperties;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.parser.AutoDetectParser;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class AnalyzerConfig {
 
     @Bean
-    public Tika analyzer() {
-        //TODO set Tika Config parameters here
-        return new Tika();
+    public TikaConfig tikaConfig() {
+        return TikaConfig.getDefaultConfig();
+    }
+
+    @Bean
+    public AutoDetectParser autoDetectParser(TikaConfig tikaConfig) {
+        return new AutoDetectParser(tikaConfig);
+    }
+
+    /**
+     * Magic bytes and file name detection only, skipping the container detectors that open the whole document.
+     */
+    @Bean
+    public Detector detector(TikaConfig tikaConfig) {
+        return tikaConfig.getMimeRepository();
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService parserExecutor(AnalyzerProperties properties) {
+        return Executors.newFixedThreadPool(properties.getParserThreads(), new CustomizableThreadFactory("parser-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService analysisExecutor(AnalyzerProperties properties) {
+        return Executors.newFixedThreadPool(properties.getPoolSize(), new CustomizableThreadFactory("analysis-"));
     }
 }
@@ -0,0 +1,44 @@
+package com.couchbase.demo.config;
+
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.env.DefaultCouchbaseEnvironment;
+import com.couchbase.demo.binaries.SerializedJsonTranscoder;
+import org.springframework.boot.autoconfigure.couchbase.CouchbaseConfiguration;
+import org.springframework.boot.autoconfigure.couchbase.CouchbaseProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import java.util.List;
+
+/**
+ * Replaces the environment auto-configured by Spring Boot, keeping every {@code spring.couchbase.env.*}
+ * setting, to turn on mutation tokens: writes return the sequence number a search can wait for, see
+ * {@link com.couchbase.demo.binaries.SessionToken}. The bucket also accepts documents whose JSON is
+ * already serialized, see {@link SerializedJsonTranscoder}. Left out of the {@code offline} profile, which
+ * runs without any cluster.
+ */
+@Configuration
+@Profile("!offline")
+public class CouchbaseConfig extends CouchbaseConfiguration {
+    private final CouchbaseProperties properties;
+
+    public CouchbaseConfig(CouchbaseProperties properties) {
+        super(properties);
+        this.properties = properties;
+    }
+
+    @Override
+    protected DefaultCouchbaseEnvironment.Builder initializeEnvironmentBuilder(CouchbaseProperties properties) {
+        return super.initializeEnvironmentBuilder(properties).mutationTokensEnabled(true);
+    }
+
+    @Override
+    @Bean
+    @Primary
+    public Bucket couchbaseClient() {
+        return couchbaseCluster().openBucket(properties.getBucket().getName(), properties.getBucket().getPassword(),
+                List.of(new SerializedJsonTranscoder()));
+    }
+}
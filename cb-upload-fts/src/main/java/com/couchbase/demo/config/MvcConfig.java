@@ -1,7 +1,5 @@
 package com.couchbase.demo.config;
 
-import org.apache.tika.Tika;
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
@@ -0,0 +1,30 @@
+package com.couchbase.demo.ingest;
+
+import com.couchbase.demo.binaries.SaveResult;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@NoArgsConstructor
+@Data
+public class BulkIngestResult {
+    private int succeeded;
+    private int failed;
+    private long elapsedMs;
+    private final List<SaveResult> files = new ArrayList<>();
+
+    void add(SaveResult result) {
+        files.add(result);
+        if (result.isSuccess()) {
+            succeeded++;
+        } else {
+            failed++;
+        }
+    }
+
+    public int getTotal() {
+        return files.size();
+    }
+}
@@ -0,0 +1,157 @@
+package com.couchbase.demo.ingest;
+
+import com.couchbase.demo.binaries.BinaryService;
+import com.couchbase.demo.binaries.SaveResult;
+import com.couchbase.demo.metrics.IngestMetrics;
+import com.couchbase.demo.metrics.IngestTrace;
+import com.couchbase.demo.storage.StorageService;
+import com.couchbase.demo.thumbnail.ThumbnailService;
+import com.couchbase.demo.upload.FileUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Loads many files in one request. Files and archive entries are spooled in batches; each batch is parsed
+ * in parallel and written to Couchbase with concurrent async inserts before the next batch is read.
+ */
+@Service
+public class BulkIngestionService {
+    private final Logger LOGGER = LoggerFactory.getLogger(BulkIngestionService.class);
+    private static final Set<String> ARCHIVE_TYPES = Set.of("application/zip", "application/x-zip-compressed");
+
+    private final BinaryService binaryService;
+    private final StorageService storageService;
+    private final StorageNames storageNames;
+    private final ThumbnailService thumbnailService;
+    private final IngestMetrics metrics;
+    private final IngestionProperties.Bulk properties;
+
+    @Autowired
+    public BulkIngestionService(BinaryService binaryService, StorageService storageService, StorageNames storageNames,
+                                ThumbnailService thumbnailService, IngestMetrics metrics, IngestionProperties properties) {
+        this.binaryService = binaryService;
+        this.storageService = storageService;
+        this.storageNames = storageNames;
+        this.thumbnailService = thumbnailService;
+        this.metrics = metrics;
+        this.properties = properties.getBulk();
+    }
+
+    public BulkIngestResult ingest(List<MultipartFile> files) {
+        long start = System.currentTimeMillis();
+        BulkIngestResult result = new BulkIngestResult();
+        List<FileUpload> batch = new ArrayList<>(properties.getBatchSize());
+        try {
+            for (MultipartFile file : files) {
+                String filename = Objects.requireNonNull(file.getOriginalFilename());
+                try (InputStream inputStream = file.getInputStream()) {
+                    if (isArchive(file)) {
+                        spoolArchive(inputStream, batch, result);
+                    } else {
+                        spool(filename, inputStream, batch, result);
+                    }
+                } catch (IOException e) {
+                    result.add(SaveResult.failure(filename, null, e));
+                }
+            }
+            flush(batch, result);
+        } finally {
+            batch.forEach(this::closeQuietly);
+        }
+        result.setElapsedMs(System.currentTimeMillis() - start);
+        LOGGER.info("Bulk load finished: {} files, {} failed in {} ms", result.getTotal(), result.getFailed(), result.getElapsedMs());
+        return result;
+    }
+
+    private void spoolArchive(InputStream inputStream, List<FileUpload> batch, BulkIngestResult result) throws IOException {
+        ZipInputStream zip = new ZipInputStream(inputStream);
+        for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+            String filename = StringUtils.getFilename(entry.getName());
+            if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/") || !StringUtils.hasText(filename) || filename.startsWith(".")) {
+                continue;
+            }
+            // entries of different folders may share a name, the second one is stored under a numbered name
+            spool(filename, zip, batch, result);
+        }
+    }
+
+    private void spool(String filename, InputStream inputStream, List<FileUpload> batch, BulkIngestResult result) {
+        try {
+            batch.add(FileUpload.from(filename, inputStream));
+        } catch (RuntimeException e) {
+            result.add(SaveResult.failure(filename, null, e));
+        }
+        if (batch.size() >= properties.getBatchSize()) {
+            flush(batch, result);
+        }
+    }
+
+    private void flush(List<FileUpload> batch, BulkIngestResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int claimed = 0;
+        try {
+            for (; claimed < batch.size(); claimed++) {
+                batch.set(claimed, storageNames.claim(batch.get(claimed)));
+            }
+            List<SaveResult> results = binaryService.saveAll(batch, properties.getWriteConcurrency());
+            for (int i = 0; i < batch.size(); i++) {
+                FileUpload upload = batch.get(i);
+                SaveResult saved = results.get(i);
+                SaveResult ingested = saved.isSuccess() ? store(upload, saved) : saved;
+                result.add(ingested);
+                metrics.record(upload.getFilename(), upload.getSize(), upload.getTrace(),
+                        !ingested.isSuccess() ? "failure" : ingested.isDuplicate() ? "duplicate" : "success");
+            }
+        } finally {
+            batch.subList(0, claimed).forEach(storageNames::release);
+            batch.forEach(this::closeQuietly);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Stores the file of a saved document, or undoes the save if the file can't be stored. A name already
+     * holding the same content is not written again, see {@link StorageNames}.
+     */
+    private SaveResult store(FileUpload upload, SaveResult saved) {
+        try {
+            if (!storageService.exists(upload.getFilename())) {
+                upload.getTrace().time(IngestTrace.STORE, () -> storageService.store(upload));
+            }
+            thumbnailService.request(saved.getDocumentId());
+            return saved;
+        } catch (RuntimeException e) {
+            try {
+                binaryService.discard(saved);
+            } catch (RuntimeException undoFailure) {
+                e.addSuppressed(undoFailure);
+            }
+            return SaveResult.failure(saved.getFilename(), saved.getDocumentId(), e);
+        }
+    }
+
+    private boolean isArchive(MultipartFile file) {
+        return ARCHIVE_TYPES.contains(file.getContentType())
+                || Objects.requireNonNull(file.getOriginalFilename()).toLowerCase().endsWith(".zip");
+    }
+
+    private void closeQuietly(FileUpload upload) {
+        try {
+            upload.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not release upload {}", upload.getFilename(), e);
+        }
+    }
+}
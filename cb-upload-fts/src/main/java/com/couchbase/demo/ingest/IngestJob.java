@@ -0,0 +1,71 @@
+package com.couchbase.demo.ingest;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+public class IngestJob {
+
+    public enum Status { QUEUED, INDEXING, STORING, COMPLETED, FAILED }
+
+    public enum Lane { SMALL, LARGE }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String filename;
+    private final long size;
+    private final Lane lane;
+    private final Instant submittedAt = Instant.now();
+    /**
+     * Name the file is stored and downloaded under, numbered when the uploaded name holds another content
+     */
+    private volatile String storedAs;
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String documentId;
+    private volatile boolean duplicate;
+    private volatile String error;
+    /**
+     * Once indexed, pass it to searches which must find the document, see {@link com.couchbase.demo.binaries.SessionToken}
+     */
+    private volatile String sessionToken;
+
+    IngestJob(String filename, long size, Lane lane) {
+        this.filename = filename;
+        this.size = size;
+        this.lane = lane;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    void started() {
+        this.startedAt = Instant.now();
+        this.status = Status.INDEXING;
+    }
+
+    void storedAs(String filename) {
+        this.storedAs = filename;
+    }
+
+    void indexed(String documentId, boolean duplicate, String sessionToken) {
+        this.documentId = documentId;
+        this.duplicate = duplicate;
+        this.sessionToken = sessionToken;
+        this.status = Status.STORING;
+    }
+
+    void completed() {
+        this.finishedAt = Instant.now();
+        this.status = Status.COMPLETED;
+    }
+
+    void failed(Throwable cause) {
+        this.error = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        this.finishedAt = Instant.now();
+        this.status = Status.FAILED;
+    }
+}
@@ -0,0 +1,126 @@
+package com.couchbase.demo.ingest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@ConfigurationProperties("ingestion")
+public class IngestionProperties {
+
+    /**
+     * Uploads of this size or bigger are parsed in the large files lane
+     */
+    private DataSize largeFileThreshold = DataSize.ofMegabytes(10);
+
+    /**
+     * How long finished jobs are kept for status queries
+     */
+    private Duration jobRetention = Duration.ofHours(1);
+
+    /**
+     * Worker pool for small uploads
+     */
+    private final Lane smallLane = new Lane(4, 100);
+
+    /**
+     * Worker pool for large uploads
+     */
+    private final Lane largeLane = new Lane(1, 10);
+
+    /**
+     * Bulk loads (multi-file and archive uploads)
+     */
+    private final Bulk bulk = new Bulk();
+
+    public DataSize getLargeFileThreshold() {
+        return largeFileThreshold;
+    }
+
+    public void setLargeFileThreshold(DataSize largeFileThreshold) {
+        this.largeFileThreshold = largeFileThreshold;
+    }
+
+    public Duration getJobRetention() {
+        return jobRetention;
+    }
+
+    public void setJobRetention(Duration jobRetention) {
+        this.jobRetention = jobRetention;
+    }
+
+    public Lane getSmallLane() {
+        return smallLane;
+    }
+
+    public Lane getLargeLane() {
+        return largeLane;
+    }
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public static class Lane {
+
+        /**
+         * Number of worker threads parsing and storing uploads
+         */
+        private int threads;
+
+        /**
+         * Maximum number of uploads waiting for a worker before new ones are rejected
+         */
+        private int queueCapacity;
+
+        public Lane(int threads, int queueCapacity) {
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    public static class Bulk {
+
+        /**
+         * Number of files spooled, parsed in parallel and written as one batch
+         */
+        private int batchSize = 200;
+
+        /**
+         * Maximum number of concurrent Couchbase writes per batch
+         */
+        private int writeConcurrency = 64;
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getWriteConcurrency() {
+            return writeConcurrency;
+        }
+
+        public void setWriteConcurrency(int writeConcurrency) {
+            this.writeConcurrency = writeConcurrency;
+        }
+    }
+}
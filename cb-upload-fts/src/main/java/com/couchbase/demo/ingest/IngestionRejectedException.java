@@ -0,0 +1,12 @@
+package com.couchbase.demo.ingest;
+
+public class IngestionRejectedException extends RuntimeException {
+
+    public IngestionRejectedException(String message) {
+        super(message);
+    }
+
+    public IngestionRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,182 @@
+package com.couchbase.demo.ingest;
+
+import com.couchbase.demo.binaries.BinaryService;
+import com.couchbase.demo.binaries.SaveResult;
+import com.couchbase.demo.metrics.IngestMetrics;
+import com.couchbase.demo.metrics.IngestTrace;
+import com.couchbase.demo.storage.StorageService;
+import com.couchbase.demo.thumbnail.ThumbnailService;
+import com.couchbase.demo.upload.FileUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+/**
+ * Runs the analysis and storage of uploads outside of the servlet threads. Small and large uploads are
+ * parsed in separate bounded lanes, so a burst of big files can't starve the small ones. When a lane is
+ * full the upload is rejected straight away instead of queueing without limit.
+ * <p>
+ * The original file is stored while the upload is parsed and saved, and whichever side succeeded is undone
+ * when the other fails, so there is neither a document without its file nor a file without its document.
+ */
+@Service
+public class IngestionService {
+    private final Logger LOGGER = LoggerFactory.getLogger(IngestionService.class);
+
+    private final BinaryService binaryService;
+    private final StorageService storageService;
+    private final StorageNames storageNames;
+    private final ThumbnailService thumbnailService;
+    private final IngestMetrics metrics;
+    private final IngestionProperties properties;
+    private final ThreadPoolExecutor smallLane;
+    private final ThreadPoolExecutor largeLane;
+    private final ExecutorService storeExecutor;
+    private final Map<String, IngestJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IngestionService(BinaryService binaryService, StorageService storageService, StorageNames storageNames,
+                            ThumbnailService thumbnailService, IngestMetrics metrics, IngestionProperties properties) {
+        this.binaryService = binaryService;
+        this.storageService = storageService;
+        this.storageNames = storageNames;
+        this.thumbnailService = thumbnailService;
+        this.metrics = metrics;
+        this.properties = properties;
+        this.smallLane = newLane("ingest-small-", properties.getSmallLane());
+        this.largeLane = newLane("ingest-large-", properties.getLargeLane());
+        // one store at most per lane worker, which waits for it
+        this.storeExecutor = Executors.newFixedThreadPool(properties.getSmallLane().getThreads() + properties.getLargeLane().getThreads(),
+                new CustomizableThreadFactory("ingest-store-"));
+    }
+
+    /**
+     * Queues the upload for ingestion. The job takes ownership of the upload and closes it once finished.
+     *
+     * @throws IngestionRejectedException when the lane for this upload is full
+     */
+    public IngestJob submit(FileUpload upload) {
+        purgeFinishedJobs();
+        IngestJob.Lane lane = upload.getSize() >= properties.getLargeFileThreshold().toBytes() ? IngestJob.Lane.LARGE : IngestJob.Lane.SMALL;
+        IngestJob job = new IngestJob(upload.getFilename(), upload.getSize(), lane);
+        jobs.put(job.getId(), job);
+        try {
+            executor(lane).execute(() -> run(job, upload));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            closeQuietly(upload);
+            throw new IngestionRejectedException("Ingestion queue is full, cannot accept " + upload.getFilename(), e);
+        }
+        LOGGER.info("Job {} queued for {} in {} lane", job.getId(), upload.getFilename(), lane);
+        return job;
+    }
+
+    public Optional<IngestJob> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(IngestJob job, FileUpload upload) {
+        try (upload) {
+            job.started();
+            upload.getTrace().record(IngestTrace.QUEUED, Duration.between(job.getSubmittedAt(), job.getStartedAt()).toNanos());
+            SaveResult saved = storeAndSave(job, upload);
+            thumbnailService.request(saved.getDocumentId());
+            job.completed();
+            metrics.record(upload.getFilename(), upload.getSize(), upload.getTrace(), saved.isDuplicate() ? "duplicate" : "success");
+        } catch (Exception e) {
+            LOGGER.error("Job {} failed ingesting {}", job.getId(), job.getFilename(), e);
+            job.failed(e);
+            metrics.record(upload.getFilename(), upload.getSize(), upload.getTrace(), "failure");
+        }
+    }
+
+    /**
+     * Stores the file while its document is parsed and saved. The file is stored under a name which doesn't
+     * hold another content, see {@link StorageNames}, so storing it never changes what an existing document
+     * points at, and a name already holding the same content is not written again. The name is claimed until
+     * the file is stored, so only this upload can have created the file it deletes on failure.
+     */
+    private SaveResult storeAndSave(IngestJob job, FileUpload received) {
+        FileUpload upload = storageNames.claim(received);
+        try {
+            job.storedAs(upload.getFilename());
+            boolean stored = storageService.exists(upload.getFilename());
+            CompletableFuture<Void> storing = stored ? null : CompletableFuture.runAsync(() -> store(upload), storeExecutor);
+            SaveResult saved;
+            try {
+                saved = binaryService.save(upload);
+            } catch (RuntimeException e) {
+                if (storing != null) {
+                    try {
+                        storing.join();
+                        storageService.delete(upload.getFilename());
+                    } catch (RuntimeException undoFailure) {
+                        e.addSuppressed(undoFailure);
+                    }
+                }
+                throw e;
+            }
+            job.indexed(saved.getDocumentId(), saved.isDuplicate(), saved.getSessionToken());
+            if (storing != null) {
+                try {
+                    storing.join();
+                } catch (RuntimeException e) {
+                    RuntimeException failure = e instanceof CompletionException && e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                    try {
+                        binaryService.discard(saved);
+                    } catch (RuntimeException undoFailure) {
+                        failure.addSuppressed(undoFailure);
+                    }
+                    throw failure;
+                }
+            }
+            return saved;
+        } finally {
+            storageNames.release(upload);
+        }
+    }
+
+    private void store(FileUpload upload) {
+        upload.getTrace().time(IngestTrace.STORE, () -> storageService.store(upload));
+    }
+
+    private ThreadPoolExecutor executor(IngestJob.Lane lane) {
+        return lane == IngestJob.Lane.LARGE ? largeLane : smallLane;
+    }
+
+    private void purgeFinishedJobs() {
+        Instant expiration = Instant.now().minus(properties.getJobRetention());
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(expiration));
+    }
+
+    private static ThreadPoolExecutor newLane(String prefix, IngestionProperties.Lane lane) {
+        return new ThreadPoolExecutor(lane.getThreads(), lane.getThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(lane.getQueueCapacity()), new CustomizableThreadFactory(prefix),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private void closeQuietly(FileUpload upload) {
+        try {
+            upload.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not release upload {}", upload.getFilename(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        smallLane.shutdown();
+        largeLane.shutdown();
+        storeExecutor.shutdown();
+    }
+}
@@ -0,0 +1,55 @@
+package com.couchbase.demo.ingest;
+
+import com.couchbase.demo.upload.FileUpload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("jobs")
+public class JobController {
+    private final IngestionService ingestionService;
+    private final BulkIngestionService bulkIngestionService;
+
+    @Autowired
+    public JobController(IngestionService ingestionService, BulkIngestionService bulkIngestionService) {
+        this.ingestionService = ingestionService;
+        this.bulkIngestionService = bulkIngestionService;
+    }
+
+    @PostMapping
+    public ResponseEntity<IngestJob> submit(@RequestParam("file") MultipartFile file) {
+        IngestJob job = ingestionService.submit(FileUpload.from(file));
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(job.getId()).toUri())
+                .body(job);
+    }
+
+    /**
+     * Loads many files, or ZIP archives of files, in one request and reports the outcome of every file.
+     */
+    @PostMapping("bulk")
+    public ResponseEntity<BulkIngestResult> bulk(@RequestParam("files") List<MultipartFile> files) {
+        return ResponseEntity.ok(bulkIngestionService.ingest(files));
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<IngestJob> get(@PathVariable("jobId") String jobId) {
+        return ingestionService.findJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @ExceptionHandler(IngestionRejectedException.class)
+    public ResponseEntity<String> handleRejected(IngestionRejectedException exc) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(exc.getMessage());
+    }
+}
@@ -0,0 +1,64 @@
+package com.couchbase.demo.ingest;
+
+import com.couchbase.demo.storage.StorageService;
+import com.couchbase.demo.upload.FileUpload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the name an upload is stored under. A stored file is never replaced by a different content: when the
+ * uploaded name already holds another file, the upload is stored under a numbered name, {@code report (2).pdf},
+ * and the documents referencing the first file keep serving the content they describe.
+ * <p>
+ * A name is claimed by one upload at a time until released, so concurrent uploads with the same name never
+ * store into, or undo, the same file.
+ */
+@Component
+class StorageNames {
+    private final StorageService storageService;
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    StorageNames(StorageService storageService) {
+        this.storageService = storageService;
+    }
+
+    /**
+     * Claims the first name neither claimed nor holding another content. Release it once the file is stored
+     * or given up.
+     *
+     * @return the upload itself when it keeps its name, else a copy renamed to the claimed name
+     */
+    FileUpload claim(FileUpload upload) {
+        for (int n = 1; ; n++) {
+            String name = n == 1 ? upload.getFilename() : numbered(upload.getFilename(), n);
+            if (!claimed.add(name)) {
+                continue;
+            }
+            try {
+                if (!storageService.exists(name) || storageService.holdsContentOf(name, upload)) {
+                    return n == 1 ? upload : upload.withFilename(name);
+                }
+            } catch (RuntimeException e) {
+                claimed.remove(name);
+                throw e;
+            }
+            claimed.remove(name);
+        }
+    }
+
+    void release(FileUpload upload) {
+        claimed.remove(upload.getFilename());
+    }
+
+    static String numbered(String filename, int n) {
+        int extension = filename.lastIndexOf('.');
+        int directory = filename.lastIndexOf('/');
+        return extension > directory + 1
+                ? filename.substring(0, extension) + " (" + n + ")" + filename.substring(extension)
+                : filename + " (" + n + ")";
+    }
+}
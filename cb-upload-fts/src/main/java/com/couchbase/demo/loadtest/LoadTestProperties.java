@@ -0,0 +1,128 @@
+package com.couchbase.demo.loadtest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties("loadtest")
+public class LoadTestProperties {
+
+    /**
+     * Run the load test once the application is started, see {@link LoadTestRunner}
+     */
+    private boolean enabled = false;
+
+    /**
+     * Folder of the files uploaded, over and over
+     */
+    private String samples = "../samples";
+
+    /**
+     * How long uploads and searches are sent
+     */
+    private Duration duration = Duration.ofSeconds(60);
+
+    /**
+     * Clients uploading files concurrently, each waiting for its job to finish before the next upload
+     */
+    private int uploaders = 4;
+
+    /**
+     * Clients searching concurrently, each sending its next search as soon as it got the previous result
+     */
+    private int searchers = 8;
+
+    /**
+     * Query strings the searches pick from
+     */
+    private List<String> queries = List.of("pdf", "sample", "document", "report", "+pdf -draft", "\"sample pdf\"");
+
+    /**
+     * Append a unique comment to PDF and text samples, so every upload is analyzed instead of being
+     * recognized as a duplicate of a content already indexed
+     */
+    private boolean uniqueContent = true;
+
+    /**
+     * How often the job of an upload is checked for completion
+     */
+    private Duration pollInterval = Duration.ofMillis(20);
+
+    /**
+     * Stop the application once the report is logged
+     */
+    private boolean exit = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getSamples() {
+        return samples;
+    }
+
+    public void setSamples(String samples) {
+        this.samples = samples;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public void setDuration(Duration duration) {
+        this.duration = duration;
+    }
+
+    public int getUploaders() {
+        return uploaders;
+    }
+
+    public void setUploaders(int uploaders) {
+        this.uploaders = uploaders;
+    }
+
+    public int getSearchers() {
+        return searchers;
+    }
+
+    public void setSearchers(int searchers) {
+        this.searchers = searchers;
+    }
+
+    public List<String> getQueries() {
+        return queries;
+    }
+
+    public void setQueries(List<String> queries) {
+        this.queries = queries;
+    }
+
+    public boolean isUniqueContent() {
+        return uniqueContent;
+    }
+
+    public void setUniqueContent(boolean uniqueContent) {
+        this.uniqueContent = uniqueContent;
+    }
+
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(Duration pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    public boolean isExit() {
+        return exit;
+    }
+
+    public void setExit(boolean exit) {
+        this.exit = exit;
+    }
+}
@@ -0,0 +1,117 @@
+package com.couchbase.demo.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Outcomes and latencies of the operations of one load test run, with the heap and garbage collections of
+ * the JVM over the run. The JVM is the one of the application, so its figures include the load generator.
+ */
+class LoadTestReport {
+    static final String UPLOAD = "upload";
+    static final String INGEST = "ingest";
+    static final String SEARCH = "search";
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<String, Operation> operations = new LinkedHashMap<>();
+    private final Map<String, long[]> gcAtStart = new HashMap<>();
+    private final long heapAtStart;
+    private final long start = System.nanoTime();
+    private long elapsedNanos;
+    private long heapAtEnd;
+    private long peakHeap;
+    private final Map<String, long[]> gcDuringRun = new LinkedHashMap<>();
+
+    LoadTestReport() {
+        for (String name : List.of(UPLOAD, INGEST, SEARCH)) {
+            operations.put(name, new Operation());
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcAtStart.put(gc.getName(), new long[]{gc.getCollectionCount(), gc.getCollectionTime()});
+        }
+        heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+        heapAtStart = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    void success(String operation, long nanos) {
+        operations.get(operation).latencies.recordValue(Math.max(nanos, 1));
+        operations.get(operation).succeeded.increment();
+    }
+
+    void rejected(String operation) {
+        operations.get(operation).rejected.increment();
+    }
+
+    void failed(String operation) {
+        operations.get(operation).failed.increment();
+    }
+
+    void finish() {
+        elapsedNanos = System.nanoTime() - start;
+        heapAtEnd = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        // the peaks of the pools may not be simultaneous, their sum is an upper bound of the peak heap
+        peakHeap = heapPools().stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long[] before = gcAtStart.getOrDefault(gc.getName(), new long[2]);
+            gcDuringRun.put(gc.getName(), new long[]{gc.getCollectionCount() - before[0], gc.getCollectionTime() - before[1]});
+        }
+    }
+
+    String format(LoadTestProperties properties) {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder report = new StringBuilder(String.format("Load test of %.1f s, %d uploaders, %d searchers%n",
+                seconds, properties.getUploaders(), properties.getSearchers()));
+        report.append(String.format("%-8s %8s %8s %8s %9s %9s %9s %9s %9s %9s%n",
+                "", "ok", "rejected", "failed", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        operations.forEach((name, operation) -> {
+            Histogram latencies = operation.latencies.getIntervalHistogram();
+            report.append(String.format("%-8s %8d %8d %8d %9.1f", name, operation.succeeded.sum(), operation.rejected.sum(),
+                    operation.failed.sum(), operation.succeeded.sum() / seconds));
+            for (double percentile : PERCENTILES) {
+                report.append(String.format(" %9.1f", millis(latencies.getValueAtPercentile(percentile))));
+            }
+            report.append(String.format(" %9.1f%n", millis(latencies.getMaxValue())));
+        });
+        report.append(String.format("heap     %d MB at start, %d MB at end, at most %d MB%n",
+                megabytes(heapAtStart), megabytes(heapAtEnd), megabytes(peakHeap)));
+        gcDuringRun.forEach((name, gc) -> report.append(String.format("gc       %s: %d collections, %d ms%n", name, gc[0], gc[1])));
+        return report.toString();
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static long megabytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    private static class Operation {
+        /**
+         * Nanoseconds, with 3 significant digits
+         */
+        private final Recorder latencies = new Recorder(3);
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+    }
+}
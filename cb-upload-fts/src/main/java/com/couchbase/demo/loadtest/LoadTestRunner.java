@@ -0,0 +1,235 @@
+package com.couchbase.demo.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Drives the running application over HTTP, through the same controllers as real clients: uploaders send
+ * the sample files to {@code /jobs} and follow their job until it is finished, while searchers send a mix of
+ * queries, sorts and facets to {@code /binaries/searching}. The outcomes, latency percentiles, heap and
+ * garbage collections of the run are logged at the end. Combined with the {@code offline} profile it needs
+ * nothing but the JVM, e.g.
+ * {@code java -jar cb-upload-fts.jar --spring.profiles.active=offline --loadtest.enabled=true --loadtest.duration=2m}.
+ */
+@Component
+@ConditionalOnProperty(name = "loadtest.enabled", havingValue = "true")
+public class LoadTestRunner implements ApplicationRunner {
+    private final Logger LOGGER = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    private static final Set<String> APPENDABLE_EXTENSIONS = Set.of("pdf", "txt", "csv", "md");
+    private static final List<String> SORTS = List.of("score", "-registeredAt", "-createdAt");
+
+    private final LoadTestProperties properties;
+    private final RestTemplateBuilder restTemplateBuilder;
+    private final Environment environment;
+    private final ConfigurableApplicationContext context;
+    private final AtomicLong uploads = new AtomicLong();
+
+    @Autowired
+    public LoadTestRunner(LoadTestProperties properties, RestTemplateBuilder restTemplateBuilder, Environment environment,
+                          ConfigurableApplicationContext context) {
+        this.properties = properties;
+        this.restTemplateBuilder = restTemplateBuilder;
+        this.environment = environment;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException, InterruptedException {
+        List<Sample> samples = loadSamples(Paths.get(properties.getSamples()));
+        RestTemplate client = restTemplateBuilder.rootUri("http://localhost:" + environment.getProperty("local.server.port")).build();
+        LOGGER.info("Load test of {} with {} samples, {} uploaders and {} searchers", properties.getDuration(), samples.size(),
+                properties.getUploaders(), properties.getSearchers());
+
+        LoadTestReport report = new LoadTestReport();
+        long deadline = System.nanoTime() + properties.getDuration().toNanos();
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(properties.getUploaders() + properties.getSearchers(), runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < properties.getUploaders(); i++) {
+            int first = i;
+            clients.execute(() -> {
+                for (int next = first; System.nanoTime() < deadline; next++) {
+                    upload(client, samples.get(next % samples.size()), report, deadline);
+                }
+            });
+        }
+        for (int i = 0; i < properties.getSearchers(); i++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    search(client, report);
+                }
+            });
+        }
+        clients.shutdown();
+        if (!clients.awaitTermination(properties.getDuration().toMillis() + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Load test clients still busy after the run, reporting without them");
+            clients.shutdownNow();
+        }
+        report.finish();
+        LOGGER.info("{}", report.format(properties));
+
+        if (properties.isExit()) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * Uploads the sample and polls its job until it is finished: {@code upload} times the request,
+     * {@code ingest} the whole ingestion as seen by the client, to within the poll interval.
+     */
+    private void upload(RestTemplate client, Sample sample, LoadTestReport report, long deadline) {
+        long number = uploads.incrementAndGet();
+        String filename = "loadtest-" + number + "-" + sample.filename;
+        MultiValueMap<String, Object> form = new LinkedMultiValueMap<>();
+        form.add("file", new ByteArrayResource(sample.content(properties.isUniqueContent() ? number : null)) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        });
+        long start = System.nanoTime();
+        Map<?, ?> job;
+        try {
+            ResponseEntity<Map> submitted = client.postForEntity("/jobs", form, Map.class);
+            report.success(LoadTestReport.UPLOAD, System.nanoTime() - start);
+            job = submitted.getBody();
+        } catch (HttpStatusCodeException e) {
+            if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                report.rejected(LoadTestReport.UPLOAD);
+                pause();
+            } else {
+                report.failed(LoadTestReport.UPLOAD);
+            }
+            return;
+        } catch (RuntimeException e) {
+            report.failed(LoadTestReport.UPLOAD);
+            return;
+        }
+
+        try {
+            while (!Boolean.TRUE.equals(job.get("finished"))) {
+                if (System.nanoTime() > deadline + TimeUnit.SECONDS.toNanos(30)) {
+                    report.failed(LoadTestReport.INGEST);
+                    return;
+                }
+                pause();
+                job = client.getForObject("/jobs/{id}", Map.class, job.get("id"));
+            }
+        } catch (RuntimeException e) {
+            report.failed(LoadTestReport.INGEST);
+            return;
+        }
+        if ("COMPLETED".equals(job.get("status"))) {
+            report.success(LoadTestReport.INGEST, System.nanoTime() - start);
+        } else {
+            report.failed(LoadTestReport.INGEST);
+        }
+    }
+
+    private void search(RestTemplate client, LoadTestReport report) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Object> request = new HashMap<>();
+        request.put("query", properties.getQueries().get(random.nextInt(properties.getQueries().size())));
+        request.put("sort", List.of(SORTS.get(random.nextInt(SORTS.size()))));
+        request.put("facets", random.nextBoolean());
+        request.put("size", 10);
+        long start = System.nanoTime();
+        try {
+            client.postForEntity("/binaries/searching", request, String.class);
+            report.success(LoadTestReport.SEARCH, System.nanoTime() - start);
+        } catch (HttpStatusCodeException e) {
+            if (e.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE) {
+                report.rejected(LoadTestReport.SEARCH);
+            } else {
+                report.failed(LoadTestReport.SEARCH);
+            }
+        } catch (RuntimeException e) {
+            report.failed(LoadTestReport.SEARCH);
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(properties.getPollInterval().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads every sample once, so the run measures the application rather than the disk.
+     */
+    private static List<Sample> loadSamples(Path folder) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                samples.add(new Sample(file.getFileName().toString(), Files.readAllBytes(file)));
+            }
+        }
+        if (samples.isEmpty()) {
+            throw new IllegalStateException("No sample file to upload in " + folder.toAbsolutePath());
+        }
+        return samples;
+    }
+
+    private static final class Sample {
+        private final String filename;
+        private final byte[] content;
+        private final boolean appendable;
+
+        Sample(String filename, byte[] content) {
+            this.filename = filename;
+            this.content = content;
+            String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+            this.appendable = APPENDABLE_EXTENSIONS.contains(extension);
+        }
+
+        /**
+         * @param number made part of the content, as a trailing comment line, null to send the file as it is
+         */
+        byte[] content(Long number) {
+            if (number == null || !appendable) {
+                return content;
+            }
+            byte[] suffix = ("\n% loadtest " + number + "\n").getBytes(StandardCharsets.US_ASCII);
+            byte[] varied = Arrays.copyOf(content, content.length + suffix.length);
+            System.arraycopy(suffix, 0, varied, content.length, suffix.length);
+            return varied;
+        }
+    }
+}
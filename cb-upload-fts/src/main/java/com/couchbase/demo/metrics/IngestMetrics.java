@@ -0,0 +1,80 @@
+package com.couchbase.demo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Records ingestion traces as Micrometer meters tagged by document type and size bucket:
+ * <ul>
+ *     <li>{@code ingest.stage}: time per stage, with percentile histograms</li>
+ *     <li>{@code ingest.total}: end to end time by outcome</li>
+ *     <li>{@code ingest.bytes} and {@code ingest.extracted.characters}: uploaded bytes and extracted text</li>
+ * </ul>
+ */
+@Component
+public class IngestMetrics {
+    private final Logger LOGGER = LoggerFactory.getLogger(IngestMetrics.class);
+    private static final long KB = 1024;
+    private static final long MB = 1024 * KB;
+
+    private final MeterRegistry registry;
+    private final long slowNanos;
+
+    @Autowired
+    public IngestMetrics(MeterRegistry registry, InstrumentationProperties properties) {
+        this.registry = registry;
+        this.slowNanos = properties.getSlowIngestion().toNanos();
+    }
+
+    public void record(String filename, long size, IngestTrace trace, String outcome) {
+        long elapsed = trace.elapsedNanos();
+        Map<String, Long> stages = trace.getStages();
+        Tags tags = Tags.of("docType", trace.getDocType(), "size", sizeBucket(size));
+
+        stages.forEach((stage, nanos) -> Timer.builder("ingest.stage")
+                .tags(tags).tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS));
+        Timer.builder("ingest.total")
+                .tags(tags).tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        Counter.builder("ingest.bytes").baseUnit("bytes").tags(tags).register(registry).increment(size);
+        Counter.builder("ingest.extracted.characters").tags(tags).register(registry).increment(trace.getExtractedCharacters());
+
+        if (elapsed > slowNanos) {
+            LOGGER.warn("Slow ingestion of {} ({} bytes, {}, {}) in {} ms: {}", filename, size, trace.getDocType(), outcome,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed), stages.entrySet().stream()
+                            .map(stage -> stage.getKey() + "=" + TimeUnit.NANOSECONDS.toMillis(stage.getValue()) + "ms")
+                            .collect(Collectors.joining(", ")));
+        }
+    }
+
+    static String sizeBucket(long size) {
+        if (size < 100 * KB) {
+            return "<100KB";
+        }
+        if (size < MB) {
+            return "<1MB";
+        }
+        if (size < 10 * MB) {
+            return "<10MB";
+        }
+        if (size < 100 * MB) {
+            return "<100MB";
+        }
+        return ">=100MB";
+    }
+}
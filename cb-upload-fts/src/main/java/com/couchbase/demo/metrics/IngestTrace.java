@@ -0,0 +1,73 @@
+package com.couchbase.demo.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Time spent by one upload in each ingestion stage, filled in by the components it goes through and
+ * recorded by {@link IngestMetrics} once the upload is stored.
+ */
+public class IngestTrace {
+    public static final String SPOOL = "spool";
+    public static final String QUEUED = "queued";
+    public static final String PARSE = "parse";
+    public static final String METADATA = "metadata";
+    public static final String SAVE = "save";
+    public static final String STORE = "store";
+
+    private final long startedAt = System.nanoTime();
+    private final Map<String, Long> stages = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile String docType = "unknown";
+    private volatile long extractedCharacters;
+
+    public <T> T time(String stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void time(String stage, Runnable work) {
+        time(stage, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public void record(String stage, long nanos) {
+        stages.merge(stage, nanos, Long::sum);
+    }
+
+    /**
+     * @return the nanoseconds spent per stage, in the order the stages were first recorded
+     */
+    public Map<String, Long> getStages() {
+        synchronized (stages) {
+            return new LinkedHashMap<>(stages);
+        }
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startedAt;
+    }
+
+    public String getDocType() {
+        return docType;
+    }
+
+    public void setDocType(String docType) {
+        this.docType = docType;
+    }
+
+    public long getExtractedCharacters() {
+        return extractedCharacters;
+    }
+
+    public void setExtractedCharacters(long extractedCharacters) {
+        this.extractedCharacters = extractedCharacters;
+    }
+}
@@ -0,0 +1,35 @@
+package com.couchbase.demo.metrics;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties("instrumentation")
+public class InstrumentationProperties {
+
+    /**
+     * Ingestions taking longer are logged with the time spent in each stage
+     */
+    private Duration slowIngestion = Duration.ofSeconds(10);
+
+    /**
+     * Searches taking longer are logged with their query
+     */
+    private Duration slowSearch = Duration.ofSeconds(1);
+
+    public Duration getSlowIngestion() {
+        return slowIngestion;
+    }
+
+    public void setSlowIngestion(Duration slowIngestion) {
+        this.slowIngestion = slowIngestion;
+    }
+
+    public Duration getSlowSearch() {
+        return slowSearch;
+    }
+
+    public void setSlowSearch(Duration slowSearch) {
+        this.slowSearch = slowSearch;
+    }
+}
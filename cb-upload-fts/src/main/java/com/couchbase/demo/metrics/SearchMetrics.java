@@ -0,0 +1,47 @@
+package com.couchbase.demo.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FTS query latency ({@code search.query}, by outcome) and number of hits ({@code search.hits}).
+ */
+@Component
+public class SearchMetrics {
+    private final Logger LOGGER = LoggerFactory.getLogger(SearchMetrics.class);
+
+    private final MeterRegistry registry;
+    private final DistributionSummary hits;
+    private final long slowNanos;
+
+    @Autowired
+    public SearchMetrics(MeterRegistry registry, InstrumentationProperties properties) {
+        this.registry = registry;
+        this.hits = DistributionSummary.builder("search.hits").publishPercentileHistogram().register(registry);
+        this.slowNanos = properties.getSlowSearch().toNanos();
+    }
+
+    /**
+     * @param totalHits hits matching the query, ignored unless the outcome is a success
+     */
+    public void record(String query, long nanos, String outcome, long totalHits) {
+        Timer.builder("search.query")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if ("success".equals(outcome)) {
+            hits.record(totalHits);
+        }
+        if (nanos > slowNanos) {
+            LOGGER.warn("Slow search ({}) in {} ms: {}", outcome, TimeUnit.NANOSECONDS.toMillis(nanos), query);
+        }
+    }
+}
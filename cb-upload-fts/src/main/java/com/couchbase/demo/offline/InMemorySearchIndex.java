@@ -0,0 +1,609 @@
+package com.couchbase.demo.offline;
+
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.search.SearchQuery;
+import com.couchbase.client.java.search.result.AsyncSearchQueryResult;
+import com.couchbase.client.java.search.result.SearchQueryRow;
+import com.couchbase.client.java.search.result.facets.DefaultNumericRangeFacetResult;
+import com.couchbase.client.java.search.result.facets.DefaultTermFacetResult;
+import com.couchbase.client.java.search.result.facets.FacetResult;
+import com.couchbase.client.java.search.result.facets.NumericRange;
+import com.couchbase.client.java.search.result.facets.TermRange;
+import com.couchbase.client.java.search.result.hits.DefaultHitLocations;
+import com.couchbase.client.java.search.result.impl.DefaultAsyncSearchQueryResult;
+import com.couchbase.client.java.search.result.impl.DefaultSearchMetrics;
+import com.couchbase.client.java.search.result.impl.DefaultSearchQueryRow;
+import com.couchbase.client.java.search.result.impl.DefaultSearchStatus;
+import com.couchbase.demo.binaries.SearchClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.HtmlUtils;
+import rx.Observable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Stand-in for the FTS index, good enough to exercise the application without a cluster: an inverted
+ * index of the fields mapped by fts/binarySearch-*.json, answering the queries the application sends as
+ * {@link SearchQuery#export()} JSON. It understands query strings (terms, phrases, {@code +}, {@code -} and
+ * {@code field:} prefixes), conjunctions, disjunctions, terms, numeric and date ranges, sorts, term and
+ * numeric range facets and highlighting. Text is split on anything but letters and digits and lower cased,
+ * without stemming, and scored with a plain tf-idf, so hits and their order are close to FTS, not identical.
+ */
+@Component
+@Profile("offline")
+public class InMemorySearchIndex implements SearchClient {
+    private static final String ALL = "_all";
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern CLAUSE = Pattern.compile("[+-]?(?:[\\w.]+:)?(?:\"[^\"]*\"|\\S+)");
+    private static final int FRAGMENT_SIZE = 200;
+
+    /**
+     * Analyzed fields, and those of them also searched by queries without a field
+     */
+    private static final List<String> TEXT_FIELDS = List.of("body", "reference", "metadata.author", "metadata.keywords", "thumbnail");
+    private static final List<String> ALL_FIELDS = List.of("body", "reference", "metadata.author", "metadata.keywords", "docType");
+    /**
+     * Fields indexed as a whole, with the path of their value in the document
+     */
+    private static final Map<String, String> KEYWORD_FIELDS = Map.of("docType", "docType", "metadata.authorFacet", "metadata.author");
+    private static final Set<String> NUMERIC_FIELDS = Set.of("registeredAt");
+    private static final Set<String> DATE_FIELDS = Set.of("metadata.createdAt", "metadata.lastUpdatedAt");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entry> entries = new HashMap<>();
+    /**
+     * Ids of the documents holding each term, by field
+     */
+    private final Map<String, Map<String, Set<String>>> postings = new HashMap<>();
+    private final Duration latency;
+
+    @Autowired
+    public InMemorySearchIndex(OfflineProperties properties) {
+        this.latency = properties.getSearchLatency();
+    }
+
+    /**
+     * Indexes the document, replacing its previous version.
+     */
+    void put(String id, JsonObject source) {
+        Entry entry = new Entry(source);
+        lock.writeLock().lock();
+        try {
+            unindex(id);
+            entries.put(id, entry);
+            entry.frequencies.forEach((field, terms) -> terms.keySet()
+                    .forEach(term -> postings.computeIfAbsent(field, f -> new HashMap<>()).computeIfAbsent(term, t -> new HashSet<>()).add(id)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            unindex(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void unindex(String id) {
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            previous.frequencies.forEach((field, terms) -> terms.keySet().forEach(term -> {
+                Set<String> ids = postings.get(field).get(term);
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.get(field).remove(term);
+                }
+            }));
+        }
+    }
+
+    @Override
+    public Observable<AsyncSearchQueryResult> query(SearchQuery query) {
+        Observable<AsyncSearchQueryResult> result = Observable.fromCallable(() -> search(query.indexName(), query.export()));
+        return latency.isZero() ? result : result.delaySubscription(latency.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private AsyncSearchQueryResult search(String indexName, JsonObject request) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            Set<String> highlighted = new HashSet<>();
+            Map<String, Double> scores = match(request.getObject("query"), highlighted);
+            List<Hit> hits = scores.entrySet().stream()
+                    .map(score -> new Hit(score.getKey(), score.getValue(), entries.get(score.getKey())))
+                    .sorted(comparator(request.getArray("sort")))
+                    .collect(Collectors.toList());
+
+            int from = request.getInt("from") == null ? 0 : request.getInt("from");
+            int size = request.getInt("size") == null ? 10 : request.getInt("size");
+            List<String> fields = request.getArray("fields") == null ? List.of()
+                    : request.getArray("fields").toList().stream().map(String::valueOf).collect(Collectors.toList());
+            Pattern highlight = request.containsKey("highlight") && !highlighted.isEmpty() ? termsPattern(highlighted) : null;
+            List<SearchQueryRow> rows = hits.stream().skip(from).limit(size)
+                    .map(hit -> new DefaultSearchQueryRow(indexName, hit.id, hit.score, JsonObject.empty(), new DefaultHitLocations(),
+                            highlight == null ? Map.of() : fragments(hit.entry, highlight), storedFields(hit.entry, fields)))
+                    .collect(Collectors.toList());
+
+            List<FacetResult> facets = new ArrayList<>();
+            JsonObject requestedFacets = request.getObject("facets");
+            if (requestedFacets != null) {
+                for (String name : requestedFacets.getNames()) {
+                    facets.add(facet(name, requestedFacets.getObject(name), hits));
+                }
+            }
+            double maxScore = hits.stream().mapToDouble(hit -> hit.score).max().orElse(0);
+            return new DefaultAsyncSearchQueryResult(new DefaultSearchStatus(1, 0, 1), Observable.from(rows), Observable.from(facets),
+                    Observable.just(new DefaultSearchMetrics(System.nanoTime() - start, hits.size(), maxScore)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param highlighted collects the terms to highlight in the body
+     * @return the score of every matching document, by id
+     */
+    private Map<String, Double> match(JsonObject query, Set<String> highlighted) {
+        if (query.containsKey("conjuncts")) {
+            Map<String, Double> matches = null;
+            for (Object conjunct : query.getArray("conjuncts")) {
+                Map<String, Double> next = match((JsonObject) conjunct, highlighted);
+                if (matches == null) {
+                    matches = next;
+                } else {
+                    matches.keySet().retainAll(next.keySet());
+                    matches.replaceAll((id, score) -> score + next.get(id));
+                }
+            }
+            return matches == null ? new HashMap<>() : matches;
+        }
+        if (query.containsKey("disjuncts")) {
+            int min = Math.max(query.getInt("min") == null ? 1 : query.getInt("min"), 1);
+            Map<String, Double> scores = new HashMap<>();
+            Map<String, Integer> counts = new HashMap<>();
+            for (Object disjunct : query.getArray("disjuncts")) {
+                match((JsonObject) disjunct, highlighted).forEach((id, score) -> {
+                    scores.merge(id, score, Double::sum);
+                    counts.merge(id, 1, Integer::sum);
+                });
+            }
+            scores.keySet().removeIf(id -> counts.get(id) < min);
+            return scores;
+        }
+        String field = query.getString("field") == null ? ALL : query.getString("field");
+        if (query.containsKey("query")) {
+            return queryString(query.getString("query"), highlighted);
+        }
+        if (query.containsKey("term")) {
+            return term(field, query.getString("term"), highlighted);
+        }
+        if (query.containsKey("match")) {
+            return text(field, query.getString("match"), highlighted);
+        }
+        if (query.containsKey("match_phrase")) {
+            return phrase(field, analyze(query.getString("match_phrase")), highlighted);
+        }
+        if (query.containsKey("start") || query.containsKey("end")) {
+            return dateRange(field, query);
+        }
+        if (query.containsKey("min") || query.containsKey("max")) {
+            return numericRange(field, query);
+        }
+        if (query.containsKey("match_all")) {
+            return entries.keySet().stream().collect(Collectors.toMap(id -> id, id -> 1.0));
+        }
+        if (query.containsKey("match_none")) {
+            return new HashMap<>();
+        }
+        throw new IllegalArgumentException("Query not supported offline: " + query);
+    }
+
+    /**
+     * Clauses prefixed by {@code +} must match, those prefixed by {@code -} must not, and at least one of
+     * the others must match when there is no required clause.
+     */
+    private Map<String, Double> queryString(String text, Set<String> highlighted) {
+        List<Map<String, Double>> required = new ArrayList<>();
+        List<Map<String, Double>> optional = new ArrayList<>();
+        Set<String> excluded = new HashSet<>();
+        Matcher clauses = CLAUSE.matcher(text == null ? "" : text);
+        while (clauses.find()) {
+            String clause = clauses.group();
+            char occur = clause.charAt(0);
+            if (occur == '+' || occur == '-') {
+                clause = clause.substring(1);
+            }
+            String field = ALL;
+            int colon = clause.indexOf(':');
+            if (colon > 0 && !clause.startsWith("\"")) {
+                field = clause.substring(0, colon);
+                clause = clause.substring(colon + 1);
+            }
+            Set<String> terms = occur == '-' ? new HashSet<>() : highlighted;
+            Map<String, Double> matches = clause.startsWith("\"") && clause.endsWith("\"") && clause.length() > 1
+                    ? phrase(field, analyze(clause.substring(1, clause.length() - 1)), terms)
+                    : text(field, clause, terms);
+            if (occur == '-') {
+                excluded.addAll(matches.keySet());
+            } else {
+                (occur == '+' ? required : optional).add(matches);
+            }
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+        if (!required.isEmpty()) {
+            scores.putAll(required.get(0));
+            for (Map<String, Double> matches : required.subList(1, required.size())) {
+                scores.keySet().retainAll(matches.keySet());
+                scores.replaceAll((id, score) -> score + matches.get(id));
+            }
+            optional.forEach(matches -> scores.replaceAll((id, score) -> score + matches.getOrDefault(id, 0.0)));
+        } else {
+            optional.forEach(matches -> matches.forEach((id, score) -> scores.merge(id, score, Double::sum)));
+        }
+        scores.keySet().removeAll(excluded);
+        return scores;
+    }
+
+    /**
+     * Matches any of the terms of the analyzed text, or the text as a whole on a keyword field.
+     */
+    private Map<String, Double> text(String field, String text, Set<String> highlighted) {
+        if (KEYWORD_FIELDS.containsKey(field)) {
+            return term(field, text, highlighted);
+        }
+        Map<String, Double> scores = new HashMap<>();
+        for (String token : analyze(text)) {
+            term(field, token, highlighted).forEach((id, score) -> scores.merge(id, score, Double::sum));
+        }
+        return scores;
+    }
+
+    private Map<String, Double> term(String field, String term, Set<String> highlighted) {
+        Set<String> ids = postings.getOrDefault(field, Map.of()).getOrDefault(term, Set.of());
+        if (!ids.isEmpty() && (ALL.equals(field) || "body".equals(field))) {
+            highlighted.add(term);
+        }
+        double idf = 1 + Math.log((double) entries.size() / (ids.size() + 1));
+        Map<String, Double> scores = new HashMap<>();
+        for (String id : ids) {
+            scores.put(id, Math.sqrt(entries.get(id).frequencies.get(field).get(term)) * idf);
+        }
+        return scores;
+    }
+
+    private Map<String, Double> phrase(String field, List<String> words, Set<String> highlighted) {
+        if (words.isEmpty()) {
+            return new HashMap<>();
+        }
+        Map<String, Double> scores = null;
+        for (String word : words) {
+            Map<String, Double> matches = term(field, word, new HashSet<>());
+            if (scores == null) {
+                scores = matches;
+            } else {
+                scores.keySet().retainAll(matches.keySet());
+                scores.replaceAll((id, score) -> score + matches.get(id));
+            }
+        }
+        scores.keySet().removeIf(id -> Collections.indexOfSubList(entries.get(id).tokens.get(field), words) < 0);
+        if (!scores.isEmpty() && (ALL.equals(field) || "body".equals(field))) {
+            highlighted.addAll(words);
+        }
+        return scores;
+    }
+
+    private Map<String, Double> numericRange(String field, JsonObject query) {
+        Number min = query.getNumber("min");
+        Number max = query.getNumber("max");
+        boolean minInclusive = !Boolean.FALSE.equals(query.getBoolean("inclusive_min"));
+        boolean maxInclusive = Boolean.TRUE.equals(query.getBoolean("inclusive_max"));
+        return constantScore(entry -> {
+            Double value = entry.number(field);
+            return value != null && within(value, min == null ? null : min.doubleValue(), minInclusive, max == null ? null : max.doubleValue(), maxInclusive);
+        });
+    }
+
+    private Map<String, Double> dateRange(String field, JsonObject query) {
+        Instant start = query.getString("start") == null ? null : parseDate(query.getString("start"));
+        Instant end = query.getString("end") == null ? null : parseDate(query.getString("end"));
+        boolean startInclusive = !Boolean.FALSE.equals(query.getBoolean("inclusive_start"));
+        boolean endInclusive = Boolean.TRUE.equals(query.getBoolean("inclusive_end"));
+        return constantScore(entry -> {
+            Instant value = entry.date(field);
+            return value != null && (start == null || (startInclusive ? !value.isBefore(start) : value.isAfter(start)))
+                    && (end == null || (endInclusive ? !value.isAfter(end) : value.isBefore(end)));
+        });
+    }
+
+    private Map<String, Double> constantScore(Predicate<Entry> filter) {
+        Map<String, Double> scores = new HashMap<>();
+        entries.forEach((id, entry) -> {
+            if (filter.test(entry)) {
+                scores.put(id, 1.0);
+            }
+        });
+        return scores;
+    }
+
+    private static boolean within(double value, Double min, boolean minInclusive, Double max, boolean maxInclusive) {
+        return (min == null || (minInclusive ? value >= min : value > min)) && (max == null || (maxInclusive ? value <= max : value < max));
+    }
+
+    /**
+     * Sorts given as {@code -_score}, {@code _id} or {@code field} strings or as objects, missing values last.
+     */
+    private static Comparator<Hit> comparator(JsonArray sort) {
+        List<Object> keys = sort == null ? List.of("-_score") : sort.toList();
+        Comparator<Hit> comparator = (a, b) -> 0;
+        for (Object key : keys) {
+            String by;
+            String field;
+            boolean descending;
+            if (key instanceof String) {
+                descending = ((String) key).startsWith("-");
+                field = descending ? ((String) key).substring(1) : (String) key;
+                by = "_score".equals(field) ? "score" : "_id".equals(field) ? "id" : "field";
+            } else {
+                @SuppressWarnings("unchecked") Map<String, Object> object = (Map<String, Object>) key;
+                by = String.valueOf(object.get("by"));
+                field = (String) object.get("field");
+                descending = Boolean.TRUE.equals(object.get("desc"));
+            }
+            Comparator<Hit> next;
+            if ("score".equals(by)) {
+                next = Comparator.comparingDouble(hit -> hit.score);
+            } else if ("id".equals(by)) {
+                next = Comparator.comparing(hit -> hit.id);
+            } else {
+                next = (a, b) -> compareValues(a.entry.sortValue(field), b.entry.sortValue(field));
+            }
+            Comparator<Hit> ordered = descending ? next.reversed() : next;
+            comparator = comparator.thenComparing("field".equals(by) ? missingLast(field, ordered) : ordered);
+        }
+        return comparator;
+    }
+
+    private static Comparator<Hit> missingLast(String field, Comparator<Hit> comparator) {
+        return (a, b) -> {
+            boolean aMissing = a.entry.sortValue(field) == null;
+            boolean bMissing = b.entry.sortValue(field) == null;
+            return aMissing || bMissing ? Boolean.compare(aMissing, bMissing) : comparator.compare(a, b);
+        };
+    }
+
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return 0;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private FacetResult facet(String name, JsonObject facet, List<Hit> hits) {
+        String field = facet.getString("field");
+        int size = facet.getInt("size") == null ? 10 : facet.getInt("size");
+        long missing = 0;
+        long total = 0;
+        if (facet.containsKey("numeric_ranges")) {
+            List<NumericRange> ranges = new ArrayList<>();
+            long[] counts = new long[facet.getArray("numeric_ranges").size()];
+            for (Hit hit : hits) {
+                Double value = hit.entry.number(field);
+                if (value == null) {
+                    missing++;
+                    continue;
+                }
+                total++;
+                for (int i = 0; i < counts.length; i++) {
+                    JsonObject range = facet.getArray("numeric_ranges").getObject(i);
+                    if (within(value, doubleOf(range.getNumber("min")), true, doubleOf(range.getNumber("max")), false)) {
+                        counts[i]++;
+                    }
+                }
+            }
+            for (int i = 0; i < counts.length; i++) {
+                JsonObject range = facet.getArray("numeric_ranges").getObject(i);
+                ranges.add(new NumericRange(range.getString("name"), doubleOf(range.getNumber("min")), doubleOf(range.getNumber("max")), counts[i]));
+            }
+            long counted = Arrays.stream(counts).sum();
+            return new DefaultNumericRangeFacetResult(name, field, total, missing, Math.max(total - counted, 0), ranges);
+        }
+        if (facet.containsKey("date_ranges")) {
+            throw new IllegalArgumentException("Date range facets are not supported offline: " + name);
+        }
+        Map<String, Long> counts = new HashMap<>();
+        for (Hit hit : hits) {
+            Collection<String> terms = hit.entry.terms(field);
+            if (terms.isEmpty()) {
+                missing++;
+            }
+            terms.forEach(term -> counts.merge(term, 1L, Long::sum));
+        }
+        total = counts.values().stream().mapToLong(Long::longValue).sum();
+        List<TermRange> terms = counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(size)
+                .map(count -> new TermRange(count.getKey(), count.getValue()))
+                .collect(Collectors.toList());
+        long counted = terms.stream().mapToLong(TermRange::count).sum();
+        return new DefaultTermFacetResult(name, field, total, missing, total - counted, terms);
+    }
+
+    private static Double doubleOf(Number number) {
+        return number == null ? null : number.doubleValue();
+    }
+
+    /**
+     * The values of the requested fields, lists as JSON arrays, as FTS returns the stored fields.
+     */
+    private static Map<String, String> storedFields(Entry entry, List<String> fields) {
+        Map<String, String> stored = new HashMap<>();
+        for (String field : fields) {
+            List<Object> values = values(entry.source, field).stream()
+                    .filter(value -> !(value instanceof JsonObject) && !(value instanceof JsonArray))
+                    .collect(Collectors.toList());
+            if (values.size() == 1) {
+                stored.put(field, String.valueOf(values.get(0)));
+            } else if (values.size() > 1) {
+                stored.put(field, JsonArray.from(values).toString());
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * The first passage of the body holding a matched term, with the terms marked as FTS's html highlighter does.
+     */
+    private static Map<String, List<String>> fragments(Entry entry, Pattern terms) {
+        String body = entry.source.getString("body");
+        Matcher matcher = body == null ? null : terms.matcher(body);
+        if (matcher == null || !matcher.find()) {
+            return Map.of();
+        }
+        int start = Math.max(matcher.start() - FRAGMENT_SIZE / 2, 0);
+        int end = Math.min(start + FRAGMENT_SIZE, body.length());
+        StringBuilder fragment = new StringBuilder(start > 0 ? "…" : "");
+        Matcher marks = terms.matcher(body).region(start, end);
+        int written = start;
+        while (marks.find()) {
+            fragment.append(HtmlUtils.htmlEscape(body.substring(written, marks.start())))
+                    .append("<mark>").append(HtmlUtils.htmlEscape(marks.group())).append("</mark>");
+            written = marks.end();
+        }
+        fragment.append(HtmlUtils.htmlEscape(body.substring(written, end))).append(end < body.length() ? "…" : "");
+        return Map.of("body", List.of(fragment.toString()));
+    }
+
+    private static Pattern termsPattern(Set<String> terms) {
+        return Pattern.compile(terms.stream().map(Pattern::quote).collect(Collectors.joining("|", "(?iu)(?<![\\p{L}\\p{N}])(?:", ")(?![\\p{L}\\p{N}])")));
+    }
+
+    static List<String> analyze(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        return Arrays.stream(TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+                .filter(token -> !token.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private static Instant parseDate(String value) {
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Scalars and array elements found at a dotted path of the document
+     */
+    private static List<Object> values(JsonObject source, String path) {
+        Object value = source;
+        for (String name : path.split("\\.")) {
+            if (!(value instanceof JsonObject)) {
+                return List.of();
+            }
+            value = ((JsonObject) value).get(name);
+        }
+        if (value == null) {
+            return List.of();
+        }
+        if (value instanceof JsonArray) {
+            List<Object> values = new ArrayList<>();
+            ((JsonArray) value).forEach(values::add);
+            return values;
+        }
+        return List.of(value);
+    }
+
+    /**
+     * An indexed document: its source, and the terms of each field with their frequency.
+     */
+    private static final class Entry {
+        private final JsonObject source;
+        private final Map<String, List<String>> tokens = new HashMap<>();
+        private final Map<String, Map<String, Integer>> frequencies = new HashMap<>();
+
+        Entry(JsonObject source) {
+            this.source = source;
+            List<String> all = new ArrayList<>();
+            for (String field : TEXT_FIELDS) {
+                List<String> fieldTokens = values(source, field).stream()
+                        .flatMap(value -> analyze(String.valueOf(value)).stream())
+                        .collect(Collectors.toList());
+                tokens.put(field, fieldTokens);
+                if (ALL_FIELDS.contains(field)) {
+                    all.addAll(fieldTokens);
+                }
+            }
+            KEYWORD_FIELDS.forEach((field, path) -> {
+                List<String> keywords = values(source, path).stream().map(String::valueOf).collect(Collectors.toList());
+                tokens.put(field, keywords);
+                if (ALL_FIELDS.contains(field)) {
+                    keywords.forEach(keyword -> all.addAll(analyze(keyword)));
+                }
+            });
+            tokens.put(ALL, all);
+            tokens.forEach((field, fieldTokens) -> fieldTokens
+                    .forEach(token -> frequencies.computeIfAbsent(field, f -> new HashMap<>()).merge(token, 1, Integer::sum)));
+        }
+
+        Double number(String field) {
+            return NUMERIC_FIELDS.contains(field) ? values(source, field).stream()
+                    .filter(Number.class::isInstance).map(value -> ((Number) value).doubleValue()).findFirst().orElse(null) : null;
+        }
+
+        Instant date(String field) {
+            return DATE_FIELDS.contains(field) ? values(source, field).stream()
+                    .map(value -> parseDate(String.valueOf(value))).filter(Objects::nonNull).findFirst().orElse(null) : null;
+        }
+
+        /**
+         * The distinct terms counted by a facet on the field
+         */
+        Collection<String> terms(String field) {
+            return new LinkedHashSet<>(tokens.getOrDefault(field, List.of()));
+        }
+
+        Object sortValue(String field) {
+            if (NUMERIC_FIELDS.contains(field)) {
+                return number(field);
+            }
+            String path = KEYWORD_FIELDS.getOrDefault(field, field);
+            return values(source, path).stream().findFirst().orElse(null);
+        }
+    }
+
+    private static final class Hit {
+        private final String id;
+        private final double score;
+        private final Entry entry;
+
+        Hit(String id, double score, Entry entry) {
+            this.id = id;
+            this.score = score;
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.couchbase.demo.offline;
+
+import com.couchbase.client.java.MutationState;
+import com.couchbase.client.java.document.json.JsonArray;
+import com.couchbase.client.java.document.json.JsonObject;
+import com.couchbase.client.java.error.DocumentAlreadyExistsException;
+import com.couchbase.client.java.error.subdoc.PathMismatchException;
+import com.couchbase.client.java.error.subdoc.PathNotFoundException;
+import com.couchbase.demo.binaries.SearchableBinary;
+import com.couchbase.demo.binaries.SearchableBinaryWriter;
+import com.couchbase.demo.binaries.SessionToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.couchbase.core.convert.MappingCouchbaseConverter;
+import org.springframework.data.couchbase.core.convert.translation.JacksonTranslationService;
+import org.springframework.data.couchbase.core.mapping.CouchbaseDocument;
+import org.springframework.data.couchbase.core.mapping.CouchbaseMappingContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the documents in memory, as the same JSON the Couchbase writer stores, and hands every change to
+ * the {@link InMemorySearchIndex} right away. Writes are never lost nor indexed late, so the session
+ * tokens returned hold nothing to wait for.
+ */
+@Component
+@Profile("offline")
+public class InMemorySearchableBinaryWriter implements SearchableBinaryWriter {
+    private final Map<String, JsonObject> documents = new ConcurrentHashMap<>();
+    private final InMemorySearchIndex index;
+    private final Duration latency;
+    private final MappingCouchbaseConverter converter;
+    private final JacksonTranslationService translationService = new JacksonTranslationService();
+
+    @Autowired
+    public InMemorySearchableBinaryWriter(InMemorySearchIndex index, OfflineProperties properties) {
+        this.index = index;
+        this.latency = properties.getKvLatency();
+        CouchbaseMappingContext mappingContext = new CouchbaseMappingContext();
+        mappingContext.afterPropertiesSet();
+        this.converter = new MappingCouchbaseConverter(mappingContext);
+        this.converter.afterPropertiesSet();
+        this.translationService.afterPropertiesSet();
+    }
+
+    @Override
+    public Map<String, Throwable> upsertAll(List<SearchableBinary> docs, int concurrency) {
+        pause(docs.size(), concurrency);
+        docs.forEach(doc -> put(doc, true));
+        return Map.of();
+    }
+
+    @Override
+    public Map<String, Throwable> insertAll(List<SearchableBinary> docs, int concurrency) {
+        pause(docs.size(), concurrency);
+        Map<String, Throwable> failures = new HashMap<>();
+        docs.stream().filter(doc -> !put(doc, false))
+                .forEach(doc -> failures.put(doc.getId(), new DocumentAlreadyExistsException("Document " + doc.getId() + " already exists")));
+        return failures;
+    }
+
+    @Override
+    public Optional<MutationState> insert(SearchableBinary doc) {
+        pause(1, 1);
+        return put(doc, false) ? Optional.of(SessionToken.none()) : Optional.empty();
+    }
+
+    @Override
+    public boolean exists(String id) {
+        pause(1, 1);
+        return documents.containsKey(id);
+    }
+
+    @Override
+    public Set<String> findExisting(Collection<String> ids, int concurrency) {
+        pause(ids.size(), concurrency);
+        Set<String> existing = new HashSet<>(ids);
+        existing.retainAll(documents.keySet());
+        return existing;
+    }
+
+    @Override
+    public Optional<MutationState> addReference(String id, String filename) {
+        pause(1, 1);
+        return addReferenceNow(id, filename) ? Optional.of(SessionToken.none()) : Optional.empty();
+    }
+
+    @Override
+    public Map<String, Throwable> addReferences(Map<String, String> idsByFilename, int concurrency) {
+        pause(idsByFilename.size(), concurrency);
+        Map<String, Throwable> failures = new HashMap<>();
+        idsByFilename.forEach((filename, id) -> {
+            if (!addReferenceNow(id, filename)) {
+                failures.put(filename, new NoSuchElementException("Document " + id + " doesn't exist"));
+            }
+        });
+        return failures;
+    }
+
+    /**
+     * @return false if the document doesn't exist
+     */
+    private boolean addReferenceNow(String id, String filename) {
+        return update(id, json -> {
+            JsonArray references = json.getArray("references");
+            if (references == null) {
+                json.put("references", JsonArray.from(filename));
+            } else if (!references.toList().contains(filename)) {
+                references.add(filename);
+            }
+        });
+    }
+
+    @Override
+    public boolean remove(String id) {
+        pause(1, 1);
+        boolean[] removed = {false};
+        documents.computeIfPresent(id, (key, json) -> {
+            index.remove(key);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public boolean removeReference(String id, String filename) {
+        pause(1, 1);
+        boolean[] removed = {false};
+        update(id, json -> {
+            JsonArray references = json.getArray("references");
+            List<Object> remaining = references == null ? new ArrayList<>() : references.toList();
+            removed[0] = remaining.remove(filename);
+            json.put("references", JsonArray.from(remaining));
+        });
+        return removed[0];
+    }
+
+    @Override
+    public Optional<SearchableBinary> lookup(String id, Collection<String> fields) {
+        pause(1, 1);
+        return Optional.ofNullable(lookupNow(id, fields));
+    }
+
+    @Override
+    public Map<String, SearchableBinary> lookupAll(Collection<String> ids, Collection<String> fields, int concurrency) {
+        pause(ids.size(), concurrency);
+        Map<String, SearchableBinary> found = new HashMap<>();
+        for (String id : ids) {
+            SearchableBinary doc = lookupNow(id, fields);
+            if (doc != null) {
+                found.put(id, doc);
+            }
+        }
+        return found;
+    }
+
+    private SearchableBinary lookupNow(String id, Collection<String> fields) {
+        JsonObject stored = documents.get(id);
+        if (stored == null) {
+            return null;
+        }
+        JsonObject json = JsonObject.create();
+        fields.stream().filter(stored::containsKey).forEach(field -> json.put(field, stored.get(field)));
+        return decode(id, json);
+    }
+
+    /**
+     * Applies every path to a copy of the document and replaces it only once all of them succeeded, so
+     * a missing path to remove leaves the document as it was.
+     */
+    @Override
+    public boolean mutate(String id, Map<String, Object> valuesByPath) {
+        pause(1, 1);
+        return update(id, json -> valuesByPath.forEach((path, value) -> {
+            String[] names = path.split("\\.");
+            JsonObject parent = json;
+            for (int i = 0; i < names.length - 1; i++) {
+                Object existing = parent.get(names[i]);
+                if (existing != null && !(existing instanceof JsonObject)) {
+                    throw new PathMismatchException(id, path);
+                }
+                JsonObject child = (JsonObject) existing;
+                if (child == null) {
+                    if (value == null) {
+                        throw new PathNotFoundException(id, path);
+                    }
+                    child = JsonObject.create();
+                    parent.put(names[i], child);
+                }
+                parent = child;
+            }
+            String name = names[names.length - 1];
+            if (value != null) {
+                parent.put(name, toJson(value));
+            } else if (parent.containsKey(name)) {
+                parent.removeKey(name);
+            } else {
+                throw new PathNotFoundException(id, path);
+            }
+        }));
+    }
+
+    /**
+     * Changes a copy of the stored document and indexes it, atomically with the other changes of that document.
+     *
+     * @return false if the document doesn't exist
+     */
+    private boolean update(String id, Consumer<JsonObject> change) {
+        boolean[] updated = {false};
+        documents.computeIfPresent(id, (key, stored) -> {
+            JsonObject json = JsonObject.fromJson(stored.toString());
+            change.accept(json);
+            index.put(key, json);
+            updated[0] = true;
+            return json;
+        });
+        return updated[0];
+    }
+
+    /**
+     * The extracted text is read as one string here: the in-memory index holds every body anyway.
+     *
+     * @param replace whether a stored document with the same id is replaced, else it is left as it is
+     * @return whether the document was written
+     */
+    private boolean put(SearchableBinary doc, boolean replace) {
+        CouchbaseDocument target = new CouchbaseDocument();
+        converter.write(doc, target);
+        JsonObject json = JsonObject.fromJson(translationService.encode(target));
+        if (doc.getText() != null) {
+            try {
+                json.put("body", doc.getText().asString());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the text of " + target.getId(), e);
+            }
+        }
+        boolean[] written = {false};
+        documents.compute(target.getId(), (key, stored) -> {
+            if (stored != null && !replace) {
+                return stored;
+            }
+            index.put(key, json);
+            written[0] = true;
+            return json;
+        });
+        return written[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toJson(Object value) {
+        if (value instanceof Map) {
+            return JsonObject.from((Map<String, ?>) value);
+        }
+        if (value instanceof List) {
+            return JsonArray.from((List<?>) value);
+        }
+        return value;
+    }
+
+    private SearchableBinary decode(String id, JsonObject json) {
+        CouchbaseDocument source = new CouchbaseDocument(id);
+        translationService.decode(json.toString(), source);
+        return converter.read(SearchableBinary.class, source);
+    }
+
+    /**
+     * Waits as long as {@code operations} requests sent {@code concurrency} at a time would take.
+     */
+    private void pause(int operations, int concurrency) {
+        if (latency.isZero() || operations == 0) {
+            return;
+        }
+        long rounds = (operations + Math.max(concurrency, 1) - 1) / Math.max(concurrency, 1);
+        try {
+            TimeUnit.NANOSECONDS.sleep(latency.toNanos() * rounds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.couchbase.demo.offline;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the in-memory stand-ins used instead of Couchbase by the {@code offline} profile.
+ */
+@ConfigurationProperties("offline")
+public class OfflineProperties {
+
+    /**
+     * Latency added to every key-value operation; batches pay it once per round of concurrent requests
+     */
+    private Duration kvLatency = Duration.ZERO;
+
+    /**
+     * Latency added to every search, without holding a thread while waiting
+     */
+    private Duration searchLatency = Duration.ZERO;
+
+    public Duration getKvLatency() {
+        return kvLatency;
+    }
+
+    public void setKvLatency(Duration kvLatency) {
+        this.kvLatency = kvLatency;
+    }
+
+    public Duration getSearchLatency() {
+        return searchLatency;
+    }
+
+    public void setSearchLatency(Duration searchLatency) {
+        this.searchLatency = searchLatency;
+    }
+}
@@ -0,0 +1,48 @@
+package com.couchbase.demo.reindex;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Starts, follows and stops a re-index of the stored files.
+ */
+@RestController
+@RequestMapping("admin/reindex")
+public class ReindexController {
+    private final ReindexService reindexService;
+
+    @Autowired
+    public ReindexController(ReindexService reindexService) {
+        this.reindexService = reindexService;
+    }
+
+    /**
+     * Starts a run in background, after the checkpoint of an interrupted run unless {@code resume} is false.
+     */
+    @PostMapping
+    public ResponseEntity<ReindexRun> start(@RequestParam(value = "resume", defaultValue = "true") boolean resume) {
+        return ResponseEntity.accepted().body(reindexService.start(resume));
+    }
+
+    @GetMapping
+    public ResponseEntity<ReindexRun> status() {
+        return reindexService.current()
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Stops the run once its current batch is written, a later run resumes from there.
+     */
+    @DeleteMapping
+    public ResponseEntity<Void> stop() {
+        return reindexService.stop() ? ResponseEntity.accepted().build() : ResponseEntity.notFound().build();
+    }
+
+    @ExceptionHandler(ReindexInProgressException.class)
+    public ResponseEntity<String> handleInProgress(ReindexInProgressException exc) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(exc.getMessage());
+    }
+}
@@ -0,0 +1,8 @@
+package com.couchbase.demo.reindex;
+
+public class ReindexInProgressException extends RuntimeException {
+
+    public ReindexInProgressException(String message) {
+        super(message);
+    }
+}
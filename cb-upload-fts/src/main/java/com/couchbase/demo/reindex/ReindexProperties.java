@@ -0,0 +1,85 @@
+package com.couchbase.demo.reindex;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("reindex")
+public class ReindexProperties {
+
+    /**
+     * Threads analyzing the stored files in parallel, defaults to the number of cores
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of files analyzed and written as one batch; the checkpoint moves after each batch
+     */
+    private int batchSize = 100;
+
+    /**
+     * Maximum number of documents analyzed per second, 0 for no limit
+     */
+    private double rate = 0;
+
+    /**
+     * Maximum number of concurrent Couchbase reads and writes per batch
+     */
+    private int writeConcurrency = 32;
+
+    /**
+     * File recording the last file re-indexed, so an interrupted run resumes after it
+     */
+    private String checkpoint = "reindex.checkpoint";
+
+    /**
+     * Re-index every stored file before the application starts serving
+     */
+    private boolean onStartup = false;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public int getWriteConcurrency() {
+        return writeConcurrency;
+    }
+
+    public void setWriteConcurrency(int writeConcurrency) {
+        this.writeConcurrency = writeConcurrency;
+    }
+
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(String checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public boolean isOnStartup() {
+        return onStartup;
+    }
+
+    public void setOnStartup(boolean onStartup) {
+        this.onStartup = onStartup;
+    }
+}
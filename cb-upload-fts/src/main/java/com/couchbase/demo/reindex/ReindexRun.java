@@ -0,0 +1,65 @@
+package com.couchbase.demo.reindex;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Progress of a re-index run, as reported by {@code GET /admin/reindex}.
+ */
+@Getter
+public class ReindexRun {
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    public enum Status { RUNNING, COMPLETED, STOPPED, FAILED }
+
+    private final Instant startedAt = Instant.now();
+    /**
+     * The run skips the files up to and including this one, re-indexed by an earlier run
+     */
+    private final String resumedAfter;
+    private volatile Status status = Status.RUNNING;
+    private volatile Instant finishedAt;
+    private volatile int total;
+    private volatile int indexed;
+    private volatile int failed;
+    private volatile String checkpoint;
+    private volatile String error;
+    private final List<String> failures = new CopyOnWriteArrayList<>();
+
+    ReindexRun(String resumedAfter) {
+        this.resumedAfter = resumedAfter;
+        this.checkpoint = resumedAfter;
+    }
+
+    public boolean isFinished() {
+        return status != Status.RUNNING;
+    }
+
+    void setTotal(int total) {
+        this.total = total;
+    }
+
+    synchronized void indexed(int count) {
+        indexed += count;
+    }
+
+    synchronized void failed(String filename, Throwable cause) {
+        failed++;
+        if (failures.size() < MAX_REPORTED_FAILURES) {
+            failures.add(filename + ": " + cause.getClass().getSimpleName() + ": " + cause.getMessage());
+        }
+    }
+
+    void checkpointed(String filename) {
+        this.checkpoint = filename;
+    }
+
+    void finished(Status status, Throwable cause) {
+        this.error = cause == null ? null : cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+}
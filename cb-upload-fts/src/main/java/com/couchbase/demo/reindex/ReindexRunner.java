@@ -0,0 +1,34 @@
+package com.couchbase.demo.reindex;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Re-indexes every stored file before the application starts serving, resuming after the checkpoint of an
+ * interrupted run, e.g. {@code java -jar cb-upload-fts.jar --reindex.on-startup=true --reindex.rate=50}.
+ */
+@Component
+@ConditionalOnProperty(name = "reindex.on-startup", havingValue = "true")
+public class ReindexRunner implements ApplicationRunner {
+    private final Logger LOGGER = LoggerFactory.getLogger(ReindexRunner.class);
+
+    private final ReindexService reindexService;
+
+    @Autowired
+    public ReindexRunner(ReindexService reindexService) {
+        this.reindexService = reindexService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        ReindexRun run = reindexService.run(true);
+        if (run.getFailed() > 0) {
+            LOGGER.warn("{} files could not be re-indexed: {}", run.getFailed(), run.getFailures());
+        }
+    }
+}
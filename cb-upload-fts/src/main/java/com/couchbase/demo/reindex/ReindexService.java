@@ -0,0 +1,259 @@
+package com.couchbase.demo.reindex;
+
+import com.couchbase.demo.analysis.DocumentAnalyzer;
+import com.couchbase.demo.binaries.BinaryService;
+import com.couchbase.demo.binaries.SearchableBinary;
+import com.couchbase.demo.storage.StorageException;
+import com.couchbase.demo.storage.StorageService;
+import com.couchbase.demo.upload.FileUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Rebuilds the searchable documents from the stored originals, e.g. after a change of the extraction logic
+ * or of the index mapping. Files are taken in name order, analyzed in parallel on a dedicated pool and
+ * written batch by batch. After each batch the name of its last file is checkpointed, so a run interrupted
+ * by a crash or a stop resumes after it. The analysis can be throttled to leave room for the uploads.
+ */
+@Service
+public class ReindexService {
+    private final Logger LOGGER = LoggerFactory.getLogger(ReindexService.class);
+    private static final String LAST_FILE = "last";
+
+    private final StorageService storageService;
+    private final DocumentAnalyzer analyzer;
+    private final BinaryService binaryService;
+    private final ReindexProperties properties;
+    private final Path checkpoint;
+    private final ExecutorService pool;
+    private volatile ReindexRun current;
+    private volatile boolean stopRequested;
+
+    @Autowired
+    public ReindexService(StorageService storageService, DocumentAnalyzer analyzer, BinaryService binaryService,
+                          ReindexProperties properties) {
+        this.storageService = storageService;
+        this.analyzer = analyzer;
+        this.binaryService = binaryService;
+        this.properties = properties;
+        this.checkpoint = Paths.get(properties.getCheckpoint());
+        this.pool = Executors.newFixedThreadPool(properties.getThreads(), new CustomizableThreadFactory("reindex-"));
+    }
+
+    /**
+     * Starts a run in background.
+     *
+     * @param resume skip the files re-indexed by an interrupted run, instead of starting over
+     * @throws ReindexInProgressException when a run is in progress
+     */
+    public ReindexRun start(boolean resume) {
+        ReindexRun run = begin(resume);
+        Thread coordinator = new Thread(() -> execute(run), "reindex-coordinator");
+        coordinator.setDaemon(true);
+        coordinator.start();
+        return run;
+    }
+
+    /**
+     * Runs in the calling thread until every file is re-indexed or the run is stopped.
+     *
+     * @throws ReindexInProgressException when a run is in progress
+     */
+    public ReindexRun run(boolean resume) {
+        ReindexRun run = begin(resume);
+        execute(run);
+        return run;
+    }
+
+    /**
+     * @return the run in progress, or the last one finished
+     */
+    public Optional<ReindexRun> current() {
+        return Optional.ofNullable(current);
+    }
+
+    /**
+     * Stops the run in progress once its current batch is written.
+     *
+     * @return false if no run is in progress
+     */
+    public boolean stop() {
+        ReindexRun run = current;
+        if (run == null || run.isFinished()) {
+            return false;
+        }
+        stopRequested = true;
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopRequested = true;
+        pool.shutdownNow();
+    }
+
+    private synchronized ReindexRun begin(boolean resume) {
+        ReindexRun running = current;
+        if (running != null && !running.isFinished()) {
+            throw new ReindexInProgressException("A re-index is in progress since " + running.getStartedAt());
+        }
+        stopRequested = false;
+        current = new ReindexRun(resume ? readCheckpoint().orElse(null) : null);
+        return current;
+    }
+
+    private void execute(ReindexRun run) {
+        long start = System.currentTimeMillis();
+        try {
+            List<String> names;
+            try (Stream<Path> files = storageService.loadAll()) {
+                names = files.map(Path::toString)
+                        .filter(name -> run.getResumedAfter() == null || name.compareTo(run.getResumedAfter()) > 0)
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            run.setTotal(names.size());
+            LOGGER.info("Re-indexing {} files{}", names.size(), run.getResumedAfter() == null ? "" : " after " + run.getResumedAfter());
+            Pacer pacer = new Pacer(properties.getRate());
+            for (int from = 0; from < names.size() && !stopRequested; from += properties.getBatchSize()) {
+                List<String> batch = names.subList(from, Math.min(from + properties.getBatchSize(), names.size()));
+                reindex(batch, run, pacer);
+                String last = batch.get(batch.size() - 1);
+                writeCheckpoint(last);
+                run.checkpointed(last);
+            }
+            if (stopRequested) {
+                run.finished(ReindexRun.Status.STOPPED, null);
+            } else {
+                Files.deleteIfExists(checkpoint);
+                run.finished(ReindexRun.Status.COMPLETED, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.finished(ReindexRun.Status.STOPPED, null);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Re-index failed after {}", run.getCheckpoint(), e);
+            run.finished(ReindexRun.Status.FAILED, e);
+        }
+        LOGGER.info("Re-index {}: {} documents indexed, {} failed in {} ms", run.getStatus(), run.getIndexed(), run.getFailed(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Analyzes the batch on the pool and writes it. A file which can't be analyzed is reported and skipped,
+     * it doesn't stop the run.
+     */
+    private void reindex(List<String> batch, ReindexRun run, Pacer pacer) throws InterruptedException {
+        List<CompletableFuture<SearchableBinary>> analyzing = new ArrayList<>(batch.size());
+        for (String name : batch) {
+            pacer.acquire();
+            analyzing.add(CompletableFuture.supplyAsync(() -> analyze(name), pool));
+        }
+        List<SearchableBinary> docs = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                docs.add(analyzing.get(i).join());
+            } catch (CompletionException e) {
+                LOGGER.warn("Could not re-index {}", batch.get(i), e.getCause());
+                run.failed(batch.get(i), e.getCause());
+            }
+        }
+        Map<String, Throwable> failures = binaryService.replaceAll(docs, properties.getWriteConcurrency());
+        int indexed = 0;
+        for (SearchableBinary doc : docs) {
+            Throwable failure = failures.get(doc.getId());
+            if (failure == null) {
+                indexed++;
+            } else {
+                run.failed(doc.getReference(), failure);
+            }
+        }
+        run.indexed(indexed);
+    }
+
+    private SearchableBinary analyze(String name) {
+        try (InputStream inputStream = storageService.loadAsResource(name).getInputStream();
+             FileUpload upload = FileUpload.from(name, inputStream)) {
+            return analyzer.analyze(upload);
+        } catch (IOException e) {
+            throw new StorageException("Failed to read stored file " + name, e);
+        }
+    }
+
+    private Optional<String> readCheckpoint() {
+        if (!Files.exists(checkpoint)) {
+            return Optional.empty();
+        }
+        Properties saved = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+            saved.load(reader);
+            return Optional.ofNullable(saved.getProperty(LAST_FILE));
+        } catch (IOException e) {
+            throw new StorageException("Failed to read the re-index checkpoint " + checkpoint, e);
+        }
+    }
+
+    /**
+     * Replaces the checkpoint atomically, a crash leaves either the previous one or the new one.
+     */
+    private void writeCheckpoint(String last) throws IOException {
+        Properties saved = new Properties();
+        saved.setProperty(LAST_FILE, last);
+        saved.setProperty("updatedAt", Instant.now().toString());
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            saved.store(writer, null);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Spaces out the documents evenly to stay under the target rate.
+     */
+    private static final class Pacer {
+        private final long intervalNanos;
+        private long next = System.nanoTime();
+
+        Pacer(double perSecond) {
+            this.intervalNanos = perSecond <= 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        }
+
+        void acquire() throws InterruptedException {
+            if (intervalNanos == 0) {
+                return;
+            }
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            next = Math.max(next, System.nanoTime()) + intervalNanos;
+        }
+    }
+}
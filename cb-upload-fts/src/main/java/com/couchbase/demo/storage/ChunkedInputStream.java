@@ -0,0 +1,150 @@
+package com.couchbase.demo.storage;
+
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import rx.Observable;
+import rx.Subscriber;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Blocking view over an ordered stream of chunks. At most {@code prefetch} chunks are requested ahead of
+ * the reader, and every chunk buffer is released once it has been read or when the stream is closed.
+ */
+class ChunkedInputStream extends InputStream {
+	private static final Object COMPLETED = new Object();
+
+	private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+	private final ChunkSubscriber subscriber;
+	private ByteBuf current;
+	private boolean finished;
+
+	ChunkedInputStream(Observable<ByteBuf> chunks, int prefetch) {
+		this.subscriber = new ChunkSubscriber(prefetch);
+		chunks.subscribe(subscriber);
+	}
+
+	@Override
+	public int read() throws IOException {
+		return nextChunk() ? current.readByte() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		int count = Math.min(len, current.readableBytes());
+		current.readBytes(b, off, count);
+		return count;
+	}
+
+	/**
+	 * Writes the remaining bytes straight from the chunk buffers to the channel, without copying them to a heap array.
+	 *
+	 * @return the number of bytes written
+	 */
+	long writeTo(WritableByteChannel target) throws IOException {
+		long written = 0;
+		while (nextChunk()) {
+			ByteBuffer buffer = current.nioBuffer();
+			int length = buffer.remaining();
+			while (buffer.hasRemaining()) {
+				target.write(buffer);
+			}
+			current.skipBytes(length);
+			written += length;
+		}
+		return written;
+	}
+
+	@Override
+	public int available() {
+		return current == null ? 0 : current.readableBytes();
+	}
+
+	private boolean nextChunk() throws IOException {
+		while (current == null || !current.isReadable()) {
+			releaseCurrent();
+			if (finished) {
+				return false;
+			}
+			Object next;
+			try {
+				next = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the next chunk");
+			}
+			if (next == COMPLETED) {
+				finished = true;
+			} else if (next instanceof Throwable) {
+				finished = true;
+				throw new IOException("Failed to read chunk", (Throwable) next);
+			} else {
+				current = (ByteBuf) next;
+				subscriber.requestNext();
+			}
+		}
+		return true;
+	}
+
+	private void releaseCurrent() {
+		if (current != null) {
+			current.release();
+			current = null;
+		}
+	}
+
+	@Override
+	public void close() {
+		subscriber.unsubscribe();
+		finished = true;
+		releaseCurrent();
+		for (Object pending = queue.poll(); pending != null; pending = queue.poll()) {
+			if (pending instanceof ByteBuf) {
+				((ByteBuf) pending).release();
+			}
+		}
+	}
+
+	private final class ChunkSubscriber extends Subscriber<ByteBuf> {
+		private final int prefetch;
+
+		ChunkSubscriber(int prefetch) {
+			this.prefetch = prefetch;
+		}
+
+		@Override
+		public void onStart() {
+			request(prefetch);
+		}
+
+		void requestNext() {
+			request(1);
+		}
+
+		@Override
+		public void onNext(ByteBuf chunk) {
+			queue.add(chunk);
+		}
+
+		@Override
+		public void onError(Throwable e) {
+			queue.add(e);
+		}
+
+		@Override
+		public void onCompleted() {
+			queue.add(COMPLETED);
+		}
+	}
+}
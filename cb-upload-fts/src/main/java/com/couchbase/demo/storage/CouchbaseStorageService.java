@@ -0,0 +1,281 @@
+package com.couchbase.demo.storage;
+
+import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
+import com.couchbase.client.deps.io.netty.buffer.PooledByteBufAllocator;
+import com.couchbase.client.java.AsyncBucket;
+import com.couchbase.client.java.Bucket;
+import com.couchbase.client.java.document.BinaryDocument;
+import com.couchbase.client.java.error.DocumentDoesNotExistException;
+import com.couchbase.client.java.query.N1qlQuery;
+import com.couchbase.demo.binaries.BinaryDoc;
+import com.couchbase.demo.binaries.BinaryDocRepository;
+import com.couchbase.demo.upload.FileUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import rx.Observable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the original files in Couchbase, so every application node sees the same files. A file is split
+ * into fixed size binary chunk documents written and read concurrently, plus a {@link BinaryDoc} manifest
+ * that is only written once all the chunks are in place. A replaced file keeps its chunks until the new
+ * manifest is saved, the new chunks being written under another generation.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "couchbase")
+public class CouchbaseStorageService implements StorageService {
+	private final Logger LOGGER = LoggerFactory.getLogger(CouchbaseStorageService.class);
+
+	private final Bucket bucket;
+	private final AsyncBucket asyncBucket;
+	private final BinaryDocRepository manifests;
+	private final ApplicationEventPublisher events;
+	private final int chunkSize;
+	private final int concurrency;
+	private final long timeoutMs;
+
+	@Autowired
+	public CouchbaseStorageService(StorageProperties properties, Bucket bucket, BinaryDocRepository manifests,
+								   ApplicationEventPublisher events) {
+		this.bucket = bucket;
+		this.asyncBucket = bucket.async();
+		this.manifests = manifests;
+		this.events = events;
+		this.chunkSize = (int) properties.getCouchbase().getChunkSize().toBytes();
+		this.concurrency = properties.getCouchbase().getConcurrency();
+		this.timeoutMs = bucket.environment().kvTimeout();
+	}
+
+	@Override
+	public void store(FileUpload file) {
+		Optional<BinaryDoc> previous = findManifest(file.getFilename());
+		BinaryDoc manifest = BinaryDoc.builder()
+				.id(BinaryDoc.idOfFilename(file.getFilename()))
+				.filename(file.getFilename())
+				.size(file.getSize())
+				.chunkSize(chunkSize)
+				.chunkCount((int) ((file.getSize() + chunkSize - 1) / chunkSize))
+				.storedAt(new Date())
+				.generation(UUID.randomUUID().toString())
+				.channels(Arrays.asList("attachments"))
+				.build();
+
+		try (FileChannel channel = FileChannel.open(file.getContent(), StandardOpenOption.READ)) {
+			Observable.range(0, manifest.getChunkCount())
+					.flatMap(index -> asyncBucket.upsert(BinaryDocument.create(manifest.chunkId(index), readChunk(channel, index, file.getSize())))
+							.timeout(timeoutMs, TimeUnit.MILLISECONDS), concurrency)
+					.toCompletable()
+					.await();
+		} catch (IOException | RuntimeException e) {
+			StorageException failure = new StorageException("Failed to store file " + file.getFilename(), e);
+			try {
+				removeChunks(manifest, 0);
+			} catch (RuntimeException undoFailure) {
+				failure.addSuppressed(undoFailure);
+			}
+			throw failure;
+		}
+		manifests.save(manifest);
+		previous.ifPresent(old -> {
+			if (!old.getId().equals(manifest.getId())) {
+				manifests.delete(old);
+			}
+			removeChunks(old, 0);
+		});
+		events.publishEvent(StorageEvent.stored(StoredFile.of(manifest.getFilename(), manifest.getSize(), manifest.getStoredAt().getTime())));
+	}
+
+	/**
+	 * Reads one chunk into a pooled buffer. The buffer is handed over to the SDK, which releases it once written.
+	 */
+	private ByteBuf readChunk(FileChannel channel, int index, long size) {
+		long position = (long) index * chunkSize;
+		int length = (int) Math.min(chunkSize, size - position);
+		ByteBuf chunk = PooledByteBufAllocator.DEFAULT.ioBuffer(length);
+		try {
+			ByteBuffer target = chunk.nioBuffer(0, length);
+			while (target.hasRemaining()) {
+				if (channel.read(target, position + target.position()) < 0) {
+					throw new IOException("Unexpected end of file at " + (position + target.position()));
+				}
+			}
+			return chunk.writerIndex(length);
+		} catch (IOException e) {
+			chunk.release();
+			throw new StorageException("Failed to read chunk " + index, e);
+		}
+	}
+
+	private void removeChunks(BinaryDoc manifest, int fromIndex) {
+		Observable.range(fromIndex, Math.max(0, manifest.getChunkCount() - fromIndex))
+				.flatMap(index -> asyncBucket.remove(manifest.chunkId(index))
+						.timeout(timeoutMs, TimeUnit.MILLISECONDS)
+						.onErrorResumeNext(e -> e instanceof DocumentDoesNotExistException ? Observable.empty() : Observable.error(e)), concurrency)
+				.toCompletable()
+				.await();
+	}
+
+	@Override
+	public Stream<Path> loadAll() {
+		// requires an index such as: CREATE INDEX idx_binary_manifest ON `demo`(filename) WHERE type = "binary"
+		String statement = "SELECT filename FROM `" + bucket.name() + "` WHERE type = \"" + BinaryDoc.PREFIX_TYPE + "\" AND filename IS NOT MISSING";
+		try {
+			return bucket.query(N1qlQuery.simple(statement)).allRows().stream()
+					.map(row -> Paths.get(row.value().getString("filename")));
+		} catch (RuntimeException e) {
+			throw new StorageException("Failed to read stored files", e);
+		}
+	}
+
+	@Override
+	public Path load(String filename) {
+		return Paths.get(filename);
+	}
+
+	@Override
+	public Resource loadAsResource(String filename) {
+		return new ChunkedResource(manifest(filename));
+	}
+
+	@Override
+	public StoredFile stat(String filename) {
+		BinaryDoc manifest = manifest(filename);
+		return StoredFile.of(manifest.getFilename(), manifest.getSize(),
+				manifest.getStoredAt() == null ? 0 : manifest.getStoredAt().getTime());
+	}
+
+	/**
+	 * Fetches only the chunks overlapping the range, and writes their buffers to the target without copying them.
+	 */
+	@Override
+	public void transferTo(String filename, long position, long count, WritableByteChannel target) throws IOException {
+		try (ChunkedInputStream in = new ChunkedInputStream(chunks(manifest(filename), position, count), concurrency)) {
+			long written = in.writeTo(target);
+			if (written != count) {
+				throw new EOFException("File " + filename + " has " + written + " bytes from " + position + " instead of " + count);
+			}
+		}
+	}
+
+	private BinaryDoc manifest(String filename) {
+		return findManifest(filename)
+				.orElseThrow(() -> new StorageFileNotFoundException("Could not read file: " + filename));
+	}
+
+	/**
+	 * Falls back to the id the manifests were stored under before {@link BinaryDoc#idOfFilename(String)},
+	 * which several names could share, so it only counts when the manifest has this exact name.
+	 */
+	private Optional<BinaryDoc> findManifest(String filename) {
+		Optional<BinaryDoc> manifest = manifests.findById(BinaryDoc.idOfFilename(filename));
+		return manifest.isPresent() ? manifest : manifests.findById(BinaryDoc.idOf(FileUpload.extractId(filename)))
+				.filter(legacy -> filename.equals(legacy.getFilename()));
+	}
+
+	/**
+	 * The chunks overlapping the range in order, each buffer trimmed to the bytes within the range.
+	 */
+	private Observable<ByteBuf> chunks(BinaryDoc manifest, long position, long count) {
+		if (count <= 0) {
+			return Observable.empty();
+		}
+		long chunkSize = manifest.getChunkSize();
+		long end = position + count;
+		int first = (int) (position / chunkSize);
+		int last = (int) ((end - 1) / chunkSize);
+		return Observable.range(first, last - first + 1)
+				.concatMapEager(index -> asyncBucket.get(manifest.chunkId(index), BinaryDocument.class)
+						.timeout(timeoutMs, TimeUnit.MILLISECONDS)
+						.switchIfEmpty(Observable.error(new StorageFileNotFoundException("Missing chunk " + manifest.chunkId(index))))
+						.map(chunk -> {
+							long chunkStart = index * chunkSize;
+							ByteBuf content = chunk.content();
+							content.writerIndex((int) Math.min(content.writerIndex(), end - chunkStart));
+							return content.readerIndex((int) Math.max(0, position - chunkStart));
+						}), concurrency, concurrency);
+	}
+
+	/**
+	 * Removes the manifest first, so the file is gone as a whole even if removing a chunk fails.
+	 */
+	@Override
+	public void delete(String filename) {
+		findManifest(filename).ifPresent(manifest -> {
+			manifests.delete(manifest);
+			removeChunks(manifest, 0);
+			events.publishEvent(StorageEvent.deleted(manifest.getFilename()));
+		});
+	}
+
+	@Override
+	public void deleteAll() {
+		loadAll().forEach(path -> delete(path.toString()));
+	}
+
+	@Override
+	public void init() {
+		LOGGER.info("Storing files in bucket {} with {} bytes chunks", bucket.name(), chunkSize);
+	}
+
+	/**
+	 * Streams the file chunk by chunk, fetching up to {@code concurrency} chunks ahead of the reader.
+	 */
+	private class ChunkedResource extends AbstractResource {
+		private final BinaryDoc manifest;
+
+		ChunkedResource(BinaryDoc manifest) {
+			this.manifest = manifest;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return new ChunkedInputStream(chunks(manifest, 0, manifest.getSize()), concurrency);
+		}
+
+		@Override
+		public boolean exists() {
+			return true;
+		}
+
+		@Override
+		public long contentLength() {
+			return manifest.getSize();
+		}
+
+		@Override
+		public long lastModified() {
+			return manifest.getStoredAt() == null ? 0 : manifest.getStoredAt().getTime();
+		}
+
+		@Override
+		public String getFilename() {
+			return manifest.getFilename();
+		}
+
+		@Override
+		public String getDescription() {
+			return "Couchbase file [" + manifest.getId() + "]";
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.couchbase.demo.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory listing of the stored files, loaded once at startup and kept current by {@link StorageEvent}s.
+ * Each sort order is a skip list, so a page costs its offset plus its size whatever the number of files.
+ */
+@Component
+public class FileIndex {
+	private final Logger LOGGER = LoggerFactory.getLogger(FileIndex.class);
+	public static final String NAME = "name";
+	public static final String SIZE = "size";
+	public static final String UPLOADED_AT = "uploadedAt";
+
+	private final StorageService storageService;
+	private final Map<String, StoredFile> files = new ConcurrentHashMap<>();
+	private final Map<String, NavigableSet<StoredFile>> orders = Map.of(
+			NAME, new ConcurrentSkipListSet<>(Comparator.comparing(StoredFile::getFilename)),
+			SIZE, new ConcurrentSkipListSet<>(Comparator.comparingLong(StoredFile::getSize).thenComparing(StoredFile::getFilename)),
+			UPLOADED_AT, new ConcurrentSkipListSet<>(Comparator.comparingLong(StoredFile::getLastModified).thenComparing(StoredFile::getFilename)));
+
+	@Autowired
+	public FileIndex(StorageService storageService) {
+		this.storageService = storageService;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		long start = System.currentTimeMillis();
+		synchronized (files) {
+			files.clear();
+			orders.values().forEach(Set::clear);
+			try (Stream<Path> all = storageService.loadAll()) {
+				all.forEach(path -> {
+					try {
+						put(storageService.stat(path.toString()));
+					} catch (StorageFileNotFoundException e) {
+						LOGGER.debug("File {} vanished while loading the listing", path);
+					}
+				});
+			}
+		}
+		LOGGER.info("Listed {} stored files in {} ms", files.size(), System.currentTimeMillis() - start);
+	}
+
+	@EventListener
+	public void onStorageEvent(StorageEvent event) {
+		switch (event.getType()) {
+			case STORED:
+				synchronized (files) {
+					put(event.getFile());
+				}
+				break;
+			case DELETED:
+				synchronized (files) {
+					remove(event.getFilename());
+				}
+				break;
+			case RESET:
+				load();
+				break;
+		}
+	}
+
+	/**
+	 * @param pageable sorted by {@value NAME}, {@value SIZE} or {@value UPLOADED_AT}, by name if unsorted
+	 */
+	public Page<StoredFile> find(Pageable pageable) {
+		Sort.Order order = pageable.getSort().stream().findFirst().orElse(Sort.Order.asc(NAME));
+		NavigableSet<StoredFile> sorted = orders.get(order.getProperty());
+		if (sorted == null) {
+			throw new IllegalArgumentException("Cannot sort files by " + order.getProperty() + ", expected any of " + orders.keySet());
+		}
+		List<StoredFile> content = (order.isAscending() ? sorted : sorted.descendingSet()).stream()
+				.skip(pageable.getOffset())
+				.limit(pageable.getPageSize())
+				.collect(Collectors.toList());
+		return new PageImpl<>(content, pageable, files.size());
+	}
+
+	public int size() {
+		return files.size();
+	}
+
+	private void put(StoredFile file) {
+		remove(file.getFilename());
+		files.put(file.getFilename(), file);
+		orders.values().forEach(sorted -> sorted.add(file));
+	}
+
+	private void remove(String filename) {
+		StoredFile previous = files.remove(filename);
+		if (previous != null) {
+			orders.values().forEach(sorted -> sorted.remove(previous));
+		}
+	}
+}
@@ -1,43 +1,65 @@
 package com.couchbase.demo.storage;
 
-import com.couchbase.client.java.Bucket;
 import com.couchbase.demo.upload.FileUpload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import static java.time.LocalDateTime.now;
 
 @Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "filesystem", matchIfMissing = true)
 public class FileSystemStorageService implements StorageService {
 	private final Logger LOGGER = LoggerFactory.getLogger(FileSystemStorageService.class);
 
+	private static final String TEMP_FOLDER = ".tmp";
+
 	private final Path rootLocation;
-	private final Bucket bucket;
+	private final Path tempLocation;
+	private final StorageLayout layout;
+	private final StorageProperties.Fsync fsync;
+	private final GroupCommitter groupCommitter;
+	private final ApplicationEventPublisher events;
+	private final boolean watch;
+	private WatchService watchService;
 
 	@Autowired
-	public FileSystemStorageService(StorageProperties properties, Bucket bucket) {
+	public FileSystemStorageService(StorageProperties properties, ApplicationEventPublisher events) {
 		this.rootLocation = Paths.get(properties.getLocation());
-		this.bucket = bucket;
+		this.tempLocation = rootLocation.resolve(TEMP_FOLDER);
+		this.layout = StorageLayout.of(properties);
+		this.fsync = properties.getFsync();
+		this.groupCommitter = fsync == StorageProperties.Fsync.GROUP_COMMIT ? new GroupCommitter(properties.getGroupCommitWindow()) : null;
+		this.events = events;
+		this.watch = properties.isWatch();
 	}
 
 	@Override
 	public void store(FileUpload file) {
 		try {
-			store(file.getFilename(), file.getStorageFileStream());
+			store(file.getFilename(), file.getContent());
+			events.publishEvent(StorageEvent.stored(stat(file.getFilename())));
 		} catch (IOException e) {
 				throw new StorageException("Failed to store file " + file.getFilename(), e);
 		}
@@ -69,17 +91,76 @@ public class FileSystemStorageService implements StorageService {
 	 */
 	}
 
-	private void store(String filename, InputStream inputStream) throws IOException{
-		Files.copy(inputStream, this.rootLocation.resolve(filename), StandardCopyOption.REPLACE_EXISTING);
+	/**
+	 * Copies to a temporary file first and renames it into place, so a crash never leaves a torn file behind.
+	 */
+	private void store(String filename, Path content) throws IOException{
+		Path target = load(filename);
+		Files.createDirectories(target.getParent());
+		Path temp = Files.createTempFile(Files.createDirectories(tempLocation), "store-", ".tmp");
+		try {
+			Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+			switch (fsync) {
+				case GROUP_COMMIT:
+					groupCommitter.commit(temp, target);
+					break;
+				case PER_FILE:
+					GroupCommitter.sync(temp);
+					Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					GroupCommitter.syncFolder(target.getParent());
+					break;
+				default:
+					Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Moves the files lying directly in the storage folder (the flat layout) to where the configured layout
+	 * expects them. Files already present at their new place are left untouched, so the migration can be
+	 * interrupted and run again.
+	 *
+	 * @return the number of files moved
+	 */
+	public int migrateFromFlatLayout() throws IOException {
+		if (layout.depth() == 1) {
+			return 0;
+		}
+		int moved = 0;
+		Set<Path> folders = new HashSet<>();
+		try (Stream<Path> files = Files.list(rootLocation)) {
+			for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+				Path target = load(file.getFileName().toString());
+				if (Files.exists(target)) {
+					LOGGER.warn("Not migrating {}, {} already exists", file, target);
+					continue;
+				}
+				Files.createDirectories(target.getParent());
+				Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+				folders.add(target.getParent());
+				if (++moved % 10_000 == 0) {
+					LOGGER.info("Migrated {} files", moved);
+				}
+			}
+		}
+		if (fsync != StorageProperties.Fsync.NONE) {
+			folders.forEach(GroupCommitter::syncFolder);
+			GroupCommitter.syncFolder(rootLocation);
+		}
+		return moved;
 	}
 
 
 	@Override
 	public Stream<Path> loadAll() {
 		try {
-			return Files.walk(this.rootLocation, 1)
-				.filter(path -> !path.equals(this.rootLocation))
-				.map(this.rootLocation::relativize);
+			return Files.walk(this.rootLocation, layout.depth())
+				.filter(path -> !path.startsWith(tempLocation) && Files.isRegularFile(path))
+				.filter(path -> this.rootLocation.relativize(path).getNameCount() == layout.depth())
+				.map(Path::getFileName);
 		}
 		catch (IOException e) {
 			throw new StorageException("Failed to read stored files", e);
@@ -89,7 +170,7 @@ public class FileSystemStorageService implements StorageService {
 
 	@Override
 	public Path load(String filename) {
-		return rootLocation.resolve(filename);
+		return layout.resolve(rootLocation, filename);
 	}
 
 	@Override
@@ -111,9 +192,128 @@ public class FileSystemStorageService implements StorageService {
 		}
 	}
 
+	@Override
+	public StoredFile stat(String filename) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(load(filename), BasicFileAttributes.class);
+			return StoredFile.of(filename, attributes.size(), attributes.lastModifiedTime().toMillis());
+		}
+		catch (IOException e) {
+			throw new StorageFileNotFoundException("Could not read file: " + filename, e);
+		}
+	}
+
+	/**
+	 * Lets the kernel copy the file pages to the target, see {@link FileChannel#transferTo}.
+	 */
+	@Override
+	public void transferTo(String filename, long position, long count, WritableByteChannel target) throws IOException {
+		try (FileChannel channel = FileChannel.open(load(filename), StandardOpenOption.READ)) {
+			long end = position + count;
+			for (long next = position; next < end; ) {
+				long transferred = channel.transferTo(next, end - next, target);
+				if (transferred <= 0 && next >= channel.size()) {
+					throw new EOFException("File " + filename + " is shorter than " + end + " bytes");
+				}
+				next += transferred;
+			}
+		}
+	}
+
+	@Override
+	public Optional<Path> localFile(String filename) {
+		return Optional.of(load(filename).toAbsolutePath());
+	}
+
+	@Override
+	public void delete(String filename) {
+		try {
+			if (Files.deleteIfExists(load(filename))) {
+				events.publishEvent(StorageEvent.deleted(filename));
+			}
+		}
+		catch (IOException e) {
+			throw new StorageException("Failed to delete file " + filename, e);
+		}
+	}
+
 	@Override
 	public void deleteAll() {
 		FileSystemUtils.deleteRecursively(rootLocation.toFile());
+		events.publishEvent(StorageEvent.reset());
+	}
+
+	/**
+	 * Drops the temporary files left by an interrupted store, then starts watching the folder.
+	 */
+	@PostConstruct
+	public void start() throws IOException {
+		init();
+		if (Files.isDirectory(tempLocation)) {
+			FileSystemUtils.deleteRecursively(tempLocation);
+		}
+		if (watch && layout.depth() == 1 && Files.isDirectory(rootLocation)) {
+			watch();
+		}
+	}
+
+	/**
+	 * Publishes a {@link StorageEvent} for every file created, modified or deleted in the folder, whoever changed it.
+	 */
+	private void watch() throws IOException {
+		watchService = rootLocation.getFileSystem().newWatchService();
+		rootLocation.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("storage-watch-");
+		threadFactory.setDaemon(true);
+		threadFactory.newThread(this::dispatchChanges).start();
+	}
+
+	private void dispatchChanges() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			}
+			catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					events.publishEvent(StorageEvent.reset());
+					continue;
+				}
+				String filename = event.context().toString();
+				if (TEMP_FOLDER.equals(filename)) {
+					continue;
+				}
+				if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+					events.publishEvent(StorageEvent.deleted(filename));
+				}
+				else {
+					try {
+						events.publishEvent(StorageEvent.stored(stat(filename)));
+					}
+					catch (StorageFileNotFoundException e) {
+						events.publishEvent(StorageEvent.deleted(filename));
+					}
+				}
+			}
+			if (!key.reset()) {
+				LOGGER.warn("Stopped watching {}", rootLocation);
+				return;
+			}
+		}
+	}
+
+	@PreDestroy
+	public void stop() throws IOException {
+		if (groupCommitter != null) {
+			groupCommitter.close();
+		}
+		if (watchService != null) {
+			watchService.close();
+		}
 	}
 
 	@Override
@@ -0,0 +1,133 @@
+package com.couchbase.demo.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Makes files durable in groups: writers hand over their temporary file and wait while a single thread
+ * collects the requests arriving within the commit window, syncs every file, renames them into place and
+ * syncs each touched folder once for the whole group.
+ */
+class GroupCommitter implements AutoCloseable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitter.class);
+
+	private final BlockingQueue<Commit> queue = new LinkedBlockingQueue<>();
+	private final long windowNanos;
+	private final ExecutorService thread;
+
+	GroupCommitter(Duration window) {
+		this.windowNanos = window.toNanos();
+		this.thread = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("storage-commit-"));
+		this.thread.execute(this::run);
+	}
+
+	/**
+	 * Blocks until the temporary file is synced and atomically renamed to the target.
+	 */
+	void commit(Path temp, Path target) throws IOException {
+		Commit commit = new Commit(temp, target);
+		queue.add(commit);
+		try {
+			commit.done.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for the commit of " + target);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	private void run() {
+		List<Commit> group = new ArrayList<>();
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				group.add(queue.take());
+				long deadline = System.nanoTime() + windowNanos;
+				for (long left = windowNanos; left > 0; left = deadline - System.nanoTime()) {
+					Commit next = queue.poll(left, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					group.add(next);
+				}
+				queue.drainTo(group);
+				commitGroup(group);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				group.forEach(commit -> commit.done.completeExceptionally(new InterruptedIOException("Storage is shutting down")));
+				group.clear();
+			}
+		}
+	}
+
+	private void commitGroup(List<Commit> group) {
+		Set<Path> folders = new LinkedHashSet<>();
+		List<Commit> renamed = new ArrayList<>();
+		for (Commit commit : group) {
+			try {
+				sync(commit.temp);
+				Files.move(commit.temp, commit.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				folders.add(commit.target.getParent());
+				renamed.add(commit);
+			} catch (IOException e) {
+				commit.done.completeExceptionally(e);
+			}
+		}
+		folders.forEach(GroupCommitter::syncFolder);
+		renamed.forEach(commit -> commit.done.complete(null));
+		LOGGER.debug("Committed {} files in {} folders", renamed.size(), folders.size());
+	}
+
+	static void sync(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Persists the folder entries (creations and renames). Not supported on every platform, in which case
+	 * the rename is as durable as the file system makes it.
+	 */
+	static void syncFolder(Path folder) {
+		try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			LOGGER.debug("Cannot sync folder {}", folder, e);
+		}
+	}
+
+	@Override
+	public void close() {
+		thread.shutdownNow();
+		for (Commit pending = queue.poll(); pending != null; pending = queue.poll()) {
+			pending.done.completeExceptionally(new InterruptedIOException("Storage is shutting down"));
+		}
+	}
+
+	private static final class Commit {
+		final Path temp;
+		final Path target;
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Commit(Path temp, Path target) {
+			this.temp = temp;
+			this.target = target;
+		}
+	}
+}
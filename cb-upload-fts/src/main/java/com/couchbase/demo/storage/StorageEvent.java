@@ -0,0 +1,33 @@
+package com.couchbase.demo.storage;
+
+import lombok.Value;
+
+/**
+ * Published by the storage services whenever the set of stored files changes.
+ */
+@Value
+public class StorageEvent {
+	public enum Type {STORED, DELETED, RESET}
+
+	Type type;
+	String filename;
+	/**
+	 * The stored file, null unless the type is {@link Type#STORED}
+	 */
+	StoredFile file;
+
+	public static StorageEvent stored(StoredFile file) {
+		return new StorageEvent(Type.STORED, file.getFilename(), file);
+	}
+
+	public static StorageEvent deleted(String filename) {
+		return new StorageEvent(Type.DELETED, filename, null);
+	}
+
+	/**
+	 * Changes were missed, listeners must reload every file
+	 */
+	public static StorageEvent reset() {
+		return new StorageEvent(Type.RESET, null, null);
+	}
+}
@@ -0,0 +1,71 @@
+package com.couchbase.demo.storage;
+
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Where a file lives under the storage folder.
+ */
+public interface StorageLayout {
+
+	Path resolve(Path root, String filename);
+
+	/**
+	 * How deep files sit under the root, 1 meaning directly in it
+	 */
+	int depth();
+
+	static StorageLayout of(StorageProperties properties) {
+		return properties.getLayout() == StorageProperties.Layout.SHARDED
+				? new Sharded(properties.getShardDepth())
+				: new Flat();
+	}
+
+	/**
+	 * Every file in the root folder.
+	 */
+	class Flat implements StorageLayout {
+
+		@Override
+		public Path resolve(Path root, String filename) {
+			return root.resolve(filename);
+		}
+
+		@Override
+		public int depth() {
+			return 1;
+		}
+	}
+
+	/**
+	 * Files spread over {@code 256^levels} sub folders named after the leading bytes of the file name hash,
+	 * e.g. {@code 3f/a2/report.pdf}, so no folder grows past a few thousand entries.
+	 */
+	class Sharded implements StorageLayout {
+		private final int levels;
+
+		Sharded(int levels) {
+			if (levels < 1 || levels > 4) {
+				throw new IllegalArgumentException("Shard depth must be between 1 and 4, got " + levels);
+			}
+			this.levels = levels;
+		}
+
+		@Override
+		public Path resolve(Path root, String filename) {
+			String hash = DigestUtils.md5DigestAsHex(filename.getBytes(StandardCharsets.UTF_8));
+			Path folder = root;
+			for (int level = 0; level < levels; level++) {
+				folder = folder.resolve(hash.substring(level * 2, level * 2 + 2));
+			}
+			return folder.resolve(filename);
+		}
+
+		@Override
+		public int depth() {
+			return levels + 1;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.couchbase.demo.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Moves the files of a flat storage folder into the configured layout before the application starts serving,
+ * e.g. {@code java -jar cb-upload-fts.jar --storage.layout=sharded --storage.migrate=true}. It runs once every
+ * singleton is created, before the web server accepts connections, so no request sees a half migrated folder.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.migrate", havingValue = "true")
+public class StorageMigration implements SmartInitializingSingleton {
+	private final Logger LOGGER = LoggerFactory.getLogger(StorageMigration.class);
+
+	private final StorageService storageService;
+	private final StorageProperties properties;
+
+	@Autowired
+	public StorageMigration(StorageService storageService, StorageProperties properties) {
+		this.storageService = storageService;
+		this.properties = properties;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		if (!(storageService instanceof FileSystemStorageService)) {
+			LOGGER.warn("Nothing to migrate, files are stored in {}", properties.getType());
+			return;
+		}
+		long start = System.currentTimeMillis();
+		int moved;
+		try {
+			moved = ((FileSystemStorageService) storageService).migrateFromFlatLayout();
+		} catch (IOException e) {
+			throw new StorageException("Failed to migrate the stored files to the " + properties.getLayout() + " layout", e);
+		}
+		LOGGER.info("Migrated {} files to the {} layout in {} ms", moved, properties.getLayout(), System.currentTimeMillis() - start);
+	}
+}
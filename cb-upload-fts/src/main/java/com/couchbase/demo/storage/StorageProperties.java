@@ -1,15 +1,74 @@
 package com.couchbase.demo.storage;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
 
 @ConfigurationProperties("storage")
 public class StorageProperties {
 
+	public enum Type { FILESYSTEM, COUCHBASE }
+
+	public enum Layout { FLAT, SHARDED }
+
+	public enum Fsync { NONE, PER_FILE, GROUP_COMMIT }
+
+	/**
+	 * Where the original files are kept
+	 */
+	private Type type = Type.FILESYSTEM;
+
 	/**
 	 * Folder location for storing files
 	 */
 	private String location = "upload-dir";
 
+	/**
+	 * How files are laid out in the folder: all in it, or spread over sub folders named after the file name hash
+	 */
+	private Layout layout = Layout.FLAT;
+
+	/**
+	 * Levels of sub folders of the sharded layout, each level multiplying the number of folders by 256
+	 */
+	private int shardDepth = 2;
+
+	/**
+	 * When stored files are flushed to disk: never (left to the OS), before each store returns, or for all
+	 * the files stored within the group commit window at once
+	 */
+	private Fsync fsync = Fsync.PER_FILE;
+
+	/**
+	 * How long the group commit waits for more files before syncing
+	 */
+	private Duration groupCommitWindow = Duration.ofMillis(10);
+
+	/**
+	 * Moves the files of the flat layout into the configured layout at startup
+	 */
+	private boolean migrate = false;
+
+	/**
+	 * Whether files added or removed in the folder by other means than uploads are picked up by the file listing,
+	 * only with the flat layout
+	 */
+	private boolean watch = true;
+
+	/**
+	 * Couchbase binary store settings
+	 */
+	private final Couchbase couchbase = new Couchbase();
+
+	public Type getType() {
+		return type;
+	}
+
+	public void setType(Type type) {
+		this.type = type;
+	}
+
 	public String getLocation() {
 		return location;
 	}
@@ -18,4 +77,85 @@ public class StorageProperties {
 		this.location = location;
 	}
 
+	public Layout getLayout() {
+		return layout;
+	}
+
+	public void setLayout(Layout layout) {
+		this.layout = layout;
+	}
+
+	public int getShardDepth() {
+		return shardDepth;
+	}
+
+	public void setShardDepth(int shardDepth) {
+		this.shardDepth = shardDepth;
+	}
+
+	public Fsync getFsync() {
+		return fsync;
+	}
+
+	public void setFsync(Fsync fsync) {
+		this.fsync = fsync;
+	}
+
+	public Duration getGroupCommitWindow() {
+		return groupCommitWindow;
+	}
+
+	public void setGroupCommitWindow(Duration groupCommitWindow) {
+		this.groupCommitWindow = groupCommitWindow;
+	}
+
+	public boolean isMigrate() {
+		return migrate;
+	}
+
+	public void setMigrate(boolean migrate) {
+		this.migrate = migrate;
+	}
+
+	public boolean isWatch() {
+		return watch;
+	}
+
+	public void setWatch(boolean watch) {
+		this.watch = watch;
+	}
+
+	public Couchbase getCouchbase() {
+		return couchbase;
+	}
+
+	public static class Couchbase {
+
+		/**
+		 * Size of the chunk documents files are split into, must stay below the KV document size limit
+		 */
+		private DataSize chunkSize = DataSize.ofMegabytes(1);
+
+		/**
+		 * Maximum number of chunks read or written at the same time for one file
+		 */
+		private int concurrency = 8;
+
+		public DataSize getChunkSize() {
+			return chunkSize;
+		}
+
+		public void setChunkSize(DataSize chunkSize) {
+			this.chunkSize = chunkSize;
+		}
+
+		public int getConcurrency() {
+			return concurrency;
+		}
+
+		public void setConcurrency(int concurrency) {
+			this.concurrency = concurrency;
+		}
+	}
+
 }
@@ -3,13 +3,22 @@ package com.couchbase.demo.storage;
 import com.couchbase.demo.upload.FileUpload;
 import org.springframework.core.io.Resource;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.stream.Stream;
 
 public interface StorageService {
 
 	void init();
 
+	/**
+	 * Stores the upload under its file name, replacing whatever is stored under that name. Callers pick a
+	 * name which doesn't hold another content, see {@link #holdsContentOf(String, FileUpload)}.
+	 */
 	void store(FileUpload file);
 
 	Stream<Path> loadAll();
@@ -18,6 +27,55 @@ public interface StorageService {
 
 	Resource loadAsResource(String filename);
 
+	/**
+	 * @throws StorageFileNotFoundException if there is no such file
+	 */
+	StoredFile stat(String filename);
+
+	/**
+	 * Writes {@code count} bytes of the file, starting at {@code position}, to the target channel.
+	 */
+	void transferTo(String filename, long position, long count, WritableByteChannel target) throws IOException;
+
+	/**
+	 * @return the file on the local disk if this storage keeps one, so the servlet container can send it by itself
+	 */
+	default Optional<Path> localFile(String filename) {
+		return Optional.empty();
+	}
+
+	/**
+	 * Removes the file, if there is one.
+	 */
+	void delete(String filename);
+
+	default boolean exists(String filename) {
+		try {
+			stat(filename);
+			return true;
+		} catch (StorageFileNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return whether the file stored under this name has the same content as the upload, compared by hash
+	 */
+	default boolean holdsContentOf(String filename, FileUpload upload) {
+		try {
+			if (stat(filename).getSize() != upload.getSize()) {
+				return false;
+			}
+			try (InputStream inputStream = loadAsResource(filename).getInputStream()) {
+				return upload.getContentHash().equals(FileUpload.contentHashOf(inputStream));
+			}
+		} catch (StorageFileNotFoundException | NoSuchFileException e) {
+			return false;
+		} catch (IOException e) {
+			throw new StorageException("Failed to read stored file " + filename, e);
+		}
+	}
+
 	void deleteAll();
 
 	//SearchResult binarySearch(String content);
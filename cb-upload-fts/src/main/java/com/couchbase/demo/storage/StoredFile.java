@@ -0,0 +1,28 @@
+package com.couchbase.demo.storage;
+
+import lombok.Value;
+
+import java.util.Date;
+
+/**
+ * What a download needs to know about a stored file, read from the storage metadata without opening the file.
+ */
+@Value
+public class StoredFile {
+	String filename;
+	long size;
+	long lastModified;
+	/**
+	 * Strong entity tag, quoted, changing whenever the file is stored again
+	 */
+	String etag;
+
+	public Date getUploadedAt() {
+		return new Date(lastModified);
+	}
+
+	static StoredFile of(String filename, long size, long lastModified) {
+		return new StoredFile(filename, size, lastModified,
+				"\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"");
+	}
+}
@@ -0,0 +1,130 @@
+package com.couchbase.demo.thumbnail;
+
+import com.couchbase.demo.storage.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Size bounded folder of rendered thumbnails, one JPEG file per document id. Files are evicted in least
+ * recently served order once the folder grows over its maximum size; after a restart the existing files
+ * are ordered by render time.
+ */
+@Component
+public class ThumbnailCache {
+    private final Logger LOGGER = LoggerFactory.getLogger(ThumbnailCache.class);
+    private static final String EXTENSION = ".jpg";
+
+    private final Path location;
+    private final long maxBytes;
+    private final Map<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    @Autowired
+    public ThumbnailCache(ThumbnailProperties properties) {
+        this.location = Paths.get(properties.getLocation());
+        this.maxBytes = properties.getMaxCacheSize().toBytes();
+        load();
+    }
+
+    public Optional<Path> get(String docId) {
+        String name = fileName(docId);
+        synchronized (sizes) {
+            if (sizes.get(name) == null) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(location.resolve(name));
+    }
+
+    public boolean contains(String docId) {
+        synchronized (sizes) {
+            return sizes.containsKey(fileName(docId));
+        }
+    }
+
+    /**
+     * Moves the rendered file into the cache, replacing any previous thumbnail of the document.
+     */
+    public void put(String docId, Path rendered) throws IOException {
+        String name = fileName(docId);
+        Path target = location.resolve(name);
+        long size = Files.size(rendered);
+        Files.move(rendered, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (sizes) {
+            Long previous = sizes.put(name, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            evict();
+        }
+    }
+
+    /**
+     * @return a temporary file in the cache folder, so that {@link #put} is an atomic rename
+     */
+    public Path newTempFile() throws IOException {
+        return Files.createTempFile(location, "render-", ".tmp");
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = sizes.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            try {
+                Files.deleteIfExists(location.resolve(entry.getKey()));
+                totalBytes -= entry.getValue();
+                eldest.remove();
+            } catch (IOException e) {
+                LOGGER.warn("Could not evict thumbnail {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void load() {
+        try {
+            Files.createDirectories(location);
+            try (Stream<Path> files = Files.list(location)) {
+                files.map(this::attributes)
+                        .filter(Optional::isPresent)
+                        .map(Optional::get)
+                        .sorted(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()))
+                        .forEach(entry -> {
+                            sizes.put(entry.getKey().getFileName().toString(), entry.getValue().size());
+                            totalBytes += entry.getValue().size();
+                        });
+            }
+            LOGGER.info("{} thumbnails ({} bytes) cached in {}", sizes.size(), totalBytes, location);
+        } catch (IOException e) {
+            throw new StorageException("Could not initialize thumbnail cache", e);
+        }
+    }
+
+    private Optional<Map.Entry<Path, BasicFileAttributes>> attributes(Path file) {
+        try {
+            if (file.getFileName().toString().endsWith(EXTENSION)) {
+                return Optional.of(Map.entry(file, Files.readAttributes(file, BasicFileAttributes.class)));
+            }
+            Files.deleteIfExists(file); // leftover of an interrupted render
+        } catch (IOException e) {
+            LOGGER.warn("Skipping unreadable thumbnail {}", file, e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Document ids are content hashes with a type prefix, only the separator needs escaping.
+     */
+    private static String fileName(String docId) {
+        return docId.replaceAll("[^A-Za-z0-9_-]", "_") + EXTENSION;
+    }
+}
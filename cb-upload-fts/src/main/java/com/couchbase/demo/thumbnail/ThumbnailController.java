@@ -0,0 +1,58 @@
+package com.couchbase.demo.thumbnail;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping("binaries")
+public class ThumbnailController {
+    private static final String PLACEHOLDER = "/images/pdf.jpg";
+
+    private final ThumbnailService service;
+    private final ThumbnailProperties properties;
+
+    @Autowired
+    public ThumbnailController(ThumbnailService service, ThumbnailProperties properties) {
+        this.service = service;
+        this.properties = properties;
+    }
+
+    /**
+     * Documents are keyed by content hash so a rendered thumbnail never changes: it is cached by browsers
+     * for a year. Until it is rendered, the static placeholder is served without caching.
+     */
+    @GetMapping("/{docId}/thumbnail")
+    public ResponseEntity<Resource> thumbnail(@PathVariable("docId") String docId, WebRequest request) {
+        String etag = "\"" + docId + "-" + properties.getWidth() + "\"";
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        Optional<Path> thumbnail = service.find(docId);
+        if (thumbnail.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(ServletUriComponentsBuilder.fromCurrentContextPath().path(PLACEHOLDER).build().toUri())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_JPEG)
+                .eTag(etag)
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic())
+                .body(new FileSystemResource(thumbnail.get()));
+    }
+}
@@ -0,0 +1,73 @@
+package com.couchbase.demo.thumbnail;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties("thumbnail")
+public class ThumbnailProperties {
+
+    /**
+     * Folder of the rendered thumbnails
+     */
+    private String location = "thumbnail-cache";
+
+    /**
+     * Maximum size of the thumbnails folder, least recently served thumbnails are evicted first
+     */
+    private DataSize maxCacheSize = DataSize.ofMegabytes(256);
+
+    /**
+     * Width in pixels of the thumbnails
+     */
+    private int width = 240;
+
+    /**
+     * Resolution the first page is rendered at before being scaled down to the thumbnail width
+     */
+    private float dpi = 48;
+
+    /**
+     * Pending renders, further requests are dropped and rendered again the next time the thumbnail is asked for
+     */
+    private int queueCapacity = 500;
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public DataSize getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    public void setMaxCacheSize(DataSize maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public float getDpi() {
+        return dpi;
+    }
+
+    public void setDpi(float dpi) {
+        this.dpi = dpi;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+}
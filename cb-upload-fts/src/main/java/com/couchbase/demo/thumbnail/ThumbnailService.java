@@ -0,0 +1,140 @@
+package com.couchbase.demo.thumbnail;
+
+import com.couchbase.demo.binaries.SearchableBinary;
+import com.couchbase.demo.binaries.SearchableBinaryWriter;
+import com.couchbase.demo.storage.StorageService;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Renders the first page of PDF documents in a single background thread, off the upload path. Renders are
+ * requested after ingestion and again whenever a thumbnail is asked for but isn't cached (dropped from a full
+ * queue or evicted), so at most one render per document is ever pending.
+ */
+@Service
+public class ThumbnailService {
+    private final Logger LOGGER = LoggerFactory.getLogger(ThumbnailService.class);
+    private static final String PDF = "application/pdf";
+    private static final int MAX_UNSUPPORTED = 10_000;
+
+    private final ThumbnailCache cache;
+    private final StorageService storageService;
+    private final SearchableBinaryWriter writer;
+    private final ThumbnailProperties properties;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Set<String> unsupported = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public ThumbnailService(ThumbnailCache cache, StorageService storageService, SearchableBinaryWriter writer, ThumbnailProperties properties) {
+        this.cache = cache;
+        this.storageService = storageService;
+        this.writer = writer;
+        this.properties = properties;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("thumbnail-");
+        threadFactory.setThreadPriority(Thread.MIN_PRIORITY);
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @return the rendered thumbnail, or empty (and a render is queued) if there is none yet
+     */
+    public Optional<Path> find(String docId) {
+        Optional<Path> thumbnail = cache.get(docId);
+        if (thumbnail.isEmpty()) {
+            request(docId);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Queues the render of the document thumbnail unless it is cached, already pending or not renderable.
+     */
+    public void request(String docId) {
+        if (unsupported.contains(docId) || cache.contains(docId) || !pending.add(docId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> render(docId));
+        } catch (RejectedExecutionException e) {
+            pending.remove(docId);
+            LOGGER.debug("Thumbnail queue is full, skipping {}", docId);
+        }
+    }
+
+    private void render(String docId) {
+        try {
+            Optional<SearchableBinary> doc = writer.lookup(docId, List.of("reference", "docType"));
+            if (doc.isEmpty() || !PDF.equals(doc.get().getDocType())) {
+                markUnsupported(docId);
+                return;
+            }
+            long start = System.currentTimeMillis();
+            try (InputStream in = storageService.loadAsResource(doc.get().getReference()).getInputStream();
+                 PDDocument pdf = PDDocument.load(in, MemoryUsageSetting.setupTempFileOnly())) {
+                if (pdf.getNumberOfPages() == 0) {
+                    markUnsupported(docId);
+                    return;
+                }
+                BufferedImage page = new PDFRenderer(pdf).renderImageWithDPI(0, properties.getDpi(), ImageType.RGB);
+                Path rendered = cache.newTempFile();
+                ImageIO.write(scale(page), "jpg", rendered.toFile());
+                cache.put(docId, rendered);
+            }
+            LOGGER.debug("Thumbnail of {} rendered in {} ms", docId, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            LOGGER.warn("Could not render thumbnail of {}", docId, e);
+            markUnsupported(docId);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not render thumbnail of {}, will retry on next request", docId, e);
+        } finally {
+            pending.remove(docId);
+        }
+    }
+
+    private BufferedImage scale(BufferedImage page) {
+        int width = Math.min(properties.getWidth(), page.getWidth());
+        int height = Math.max(1, page.getHeight() * width / page.getWidth());
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(page, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    private void markUnsupported(String docId) {
+        if (unsupported.size() >= MAX_UNSUPPORTED) {
+            unsupported.clear();
+        }
+        unsupported.add(docId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
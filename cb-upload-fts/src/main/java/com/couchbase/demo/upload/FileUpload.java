@@ -1,82 +1,135 @@
 package com.couchbase.demo.upload;
 
-import com.couchbase.client.deps.io.netty.buffer.ByteBuf;
-import com.couchbase.client.deps.io.netty.buffer.Unpooled;
-import com.couchbase.demo.binaries.SearchableBinary;
+import com.couchbase.demo.metrics.IngestTrace;
 import com.couchbase.demo.storage.StorageException;
 import lombok.Builder;
 import lombok.Value;
-import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Objects;
 
+/**
+ * Upload spooled once to a temporary file. Every consumer (Tika, file system storage, Couchbase) opens
+ * its own stream over the spool file, so heap usage does not depend on the size of the upload.
+ */
 @Value
 @Builder
 public class FileUpload implements Closeable {
+    private static final String SPOOL_PREFIX = "cb-upload-";
+    private static final String SPOOL_SUFFIX = ".spool";
+    private static final String HASH_ALGORITHM = "SHA-256";
+
     String id;
     String filename;
-    InputStream searchContentStream;
-    InputStream storageFileStream;
-    ByteBuf couchbaseBinaryByteBuf;
+    long size;
+    Path content;
+    /**
+     * Hex encoded SHA-256 of the content, computed while spooling
+     */
+    String contentHash;
+    /**
+     * Time spent in each ingestion stage, starting with the spooling
+     */
+    IngestTrace trace;
 
     public static FileUpload from(MultipartFile file) {
         String filename = StringUtils.cleanPath(Objects.requireNonNull(file.getOriginalFilename()));
+        if (file.isEmpty()) {
+            throw new StorageException("Failed to store empty file " + filename);
+        }
         try {
-            if (file.isEmpty()) {
+            return from(filename, file.getInputStream());
+        }
+        catch (IOException e) {
+            throw new StorageException("Failed to store file " + filename, e);
+        }
+    }
+
+    /**
+     * Spools the stream (e.g. an archive entry) into a new upload. The stream is consumed but not closed.
+     */
+    public static FileUpload from(String name, InputStream inputStream) {
+        String filename = cleanFilename(name);
+        IngestTrace trace = new IngestTrace();
+        long start = System.nanoTime();
+        Path spool = null;
+        try {
+            spool = Files.createTempFile(SPOOL_PREFIX, SPOOL_SUFFIX);
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            Files.copy(new DigestInputStream(inputStream, digest), spool, StandardCopyOption.REPLACE_EXISTING);
+            long size = Files.size(spool);
+            if (size == 0) {
+                deleteQuietly(spool);
                 throw new StorageException("Failed to store empty file " + filename);
             }
-            if (filename.contains("..")) {
-                // This is a security check
-                throw new StorageException("Cannot store file with relative path outside current directory "
-                        + filename);
-            }
-
-            byte []cache = StreamUtils.copyToByteArray(file.getInputStream()); // For reading inputstream twice
+            trace.record(IngestTrace.SPOOL, System.nanoTime() - start);
             return FileUpload.builder()
                     .id(extractId(filename))
                     .filename(filename)
-                    .searchContentStream(new BufferedInputStream(new ByteArrayInputStream(cache)))
-                    .storageFileStream(new BufferedInputStream(new ByteArrayInputStream(cache))) //TODO remove storage file system OR couchbase binary storage
-                    .couchbaseBinaryByteBuf(Unpooled.wrappedBuffer(cache))
+                    .size(size)
+                    .content(spool)
+                    .contentHash(toHex(digest.digest()))
+                    .trace(trace)
                     .build();
         }
-        catch (IOException e) {
+        catch (IOException | NoSuchAlgorithmException e) {
+            deleteQuietly(spool);
             throw new StorageException("Failed to store file " + filename, e);
         }
-        /*
-        String filename = StringUtils.cleanPath(file.getOriginalFilename());
-        try {
-            if (file.isEmpty()) {
-                throw new StorageException("Failed to store empty file " + filename);
-            }
-            if (filename.contains("..")) {
-                // This is a security check
-                throw new StorageException("Cannot store file with relative path outside current directory "
-                        + filename);
-            }
-
-            byte []cache = StreamUtils.copyToByteArray(file.getInputStream()); // For reading inputstream twice
-            ByteBuf byteBuf = Unpooled.wrappedBuffer(cache);
-            try (
-                    InputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(cache));
-                    InputStream inputStream2 = new BufferedInputStream(new ByteArrayInputStream(cache));) {
-                storeInFileSystem(filename, inputStream);
-                storeInCouchbase(filename, inputStream2, byteBuf);
-            }
+    }
 
+    /**
+     * Wraps content already written to disk, such as a completed resumable upload, whose hash was computed
+     * while it was received. The upload takes ownership of the file and deletes it when closed.
+     */
+    public static FileUpload of(String name, Path content, String contentHash) {
+        String filename = cleanFilename(name);
+        try {
+            return FileUpload.builder()
+                    .id(extractId(filename))
+                    .filename(filename)
+                    .size(Files.size(content))
+                    .content(content)
+                    .contentHash(contentHash)
+                    .trace(new IngestTrace())
+                    .build();
         }
         catch (IOException e) {
             throw new StorageException("Failed to store file " + filename, e);
         }
+    }
 
-         */
+    /**
+     * The same content under another name. Both share the spool file, only one of them must be closed.
+     */
+    public FileUpload withFilename(String name) {
+        String filename = cleanFilename(name);
+        return FileUpload.builder()
+                .id(extractId(filename))
+                .filename(filename)
+                .size(size)
+                .content(content)
+                .contentHash(contentHash)
+                .trace(trace)
+                .build();
     }
 
+    /**
+     * Opens a new stream over the spooled content. Callers are responsible for closing it.
+     */
+    public InputStream openStream() throws IOException {
+        return new BufferedInputStream(Files.newInputStream(content));
+    }
 
-    private static String extractId(String name) {
+    public static String extractId(String name) {
         return name.trim()
                 .replace(" ","-")
                 .replace("/","_")
@@ -84,10 +137,53 @@ public class FileUpload implements Closeable {
                 .replace(".",":").toLowerCase();
     }
 
+    public static String cleanFilename(String name) {
+        String filename = StringUtils.cleanPath(name);
+        if (filename.contains("..")) {
+            // This is a security check
+            throw new StorageException("Cannot store file with relative path outside current directory "
+                    + filename);
+        }
+        return filename;
+    }
+
+    /**
+     * Hashes the stream as {@link #getContentHash()} does the spooled content. The stream is consumed but not closed.
+     */
+    public static String contentHashOf(InputStream inputStream) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            byte[] buffer = new byte[8192];
+            for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+        }
+    }
+
     @Override
     public void close() throws IOException {
-        searchContentStream.close();
-        storageFileStream.close();
-        couchbaseBinaryByteBuf.clear();
+        Files.deleteIfExists(content);
     }
 }
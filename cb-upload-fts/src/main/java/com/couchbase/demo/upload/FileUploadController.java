@@ -1,64 +1,141 @@
 package com.couchbase.demo.upload;
 
-import com.couchbase.demo.binaries.BinaryService;
+import com.couchbase.demo.ingest.IngestJob;
+import com.couchbase.demo.ingest.IngestionRejectedException;
+import com.couchbase.demo.ingest.IngestionService;
+import com.couchbase.demo.storage.FileIndex;
 import com.couchbase.demo.storage.StorageFileNotFoundException;
 import com.couchbase.demo.storage.StorageService;
+import com.couchbase.demo.storage.StoredFile;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.ResponseEntity;
+import org.springframework.core.io.DescriptiveResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.*;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.stream.Collectors;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
 
 @Controller
 public class FileUploadController {
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
 	private final StorageService storageService;
-	private final BinaryService binaryService;
+	private final IngestionService ingestionService;
+	private final FileIndex fileIndex;
 
 	@Autowired
-	public FileUploadController(StorageService storageService, BinaryService binaryService) {
+	public FileUploadController(StorageService storageService, IngestionService ingestionService, FileIndex fileIndex) {
 		this.storageService = storageService;
-		this.binaryService = binaryService;
+		this.ingestionService = ingestionService;
+		this.fileIndex = fileIndex;
 	}
 
 	@GetMapping("/")
-	public String listUploadedFiles(Model model) throws IOException {
-
-		model.addAttribute("files", storageService.loadAll().map(
-				path -> MvcUriComponentsBuilder.fromMethodName(FileUploadController.class,
-						"serveFile", path.getFileName().toString()).build().toString())
-				.collect(Collectors.toList()));
-
+	public String listUploadedFiles(Model model,
+									@PageableDefault(size = 50, sort = FileIndex.UPLOADED_AT, direction = Sort.Direction.DESC) Pageable pageable) {
+		Page<StoredFile> files = fileIndex.find(pageable);
+		Sort.Order order = pageable.getSort().stream().findFirst().orElse(Sort.Order.desc(FileIndex.UPLOADED_AT));
+		model.addAttribute("files", files);
+		model.addAttribute("sort", order.getProperty() + "," + order.getDirection().name().toLowerCase());
 		return "uploadForm";
 	}
 
+	/**
+	 * Serves the whole file or a single byte range of it, answering conditional requests from the stored
+	 * metadata alone. Files on the local disk are handed over to Tomcat sendfile when available, other
+	 * storages write straight to the response channel.
+	 */
 	@GetMapping("/files/{filename:.+}")
-	@ResponseBody
-	public ResponseEntity<Resource> serveFile(@PathVariable String filename) {
-		Resource file = storageService.loadAsResource(filename);
-		return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION,
-				"attachment; filename=\"" + file.getFilename() + "\"").body(file);
+	public void serveFile(@PathVariable String filename, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		StoredFile file = storageService.stat(filename);
+		if (new ServletWebRequest(request, response).checkNotModified(file.getEtag(), file.getLastModified())) {
+			return;
+		}
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.builder("attachment")
+				.filename(file.getFilename(), StandardCharsets.UTF_8).build().toString());
+		response.setContentType(MediaTypeFactory.getMediaType(file.getFilename())
+				.orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+		ResourceRegion region = requestedRange(request, file);
+		if (region == null) {
+			response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + file.getSize());
+			response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+			return;
+		}
+		if (region.getCount() < file.getSize()) {
+			response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+			response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + region.getPosition() + "-"
+					+ (region.getPosition() + region.getCount() - 1) + "/" + file.getSize());
+		}
+		response.setContentLengthLong(region.getCount());
+		if (HttpMethod.HEAD.matches(request.getMethod()) || region.getCount() == 0) {
+			return;
+		}
+
+		Optional<Path> localFile = storageService.localFile(filename);
+		if (localFile.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			request.setAttribute(SENDFILE_FILENAME, localFile.get().toString());
+			request.setAttribute(SENDFILE_START, region.getPosition());
+			request.setAttribute(SENDFILE_END, region.getPosition() + region.getCount());
+			return;
+		}
+		storageService.transferTo(filename, region.getPosition(), region.getCount(), Channels.newChannel(response.getOutputStream()));
+	}
+
+	/**
+	 * @return the whole file when there is no usable Range header (absent, several ranges or an outdated
+	 * If-Range), the requested range, or null if it is out of the file
+	 */
+	private ResourceRegion requestedRange(HttpServletRequest request, StoredFile file) {
+		ResourceRegion whole = new ResourceRegion(new DescriptiveResource(file.getFilename()), 0, file.getSize());
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (ifRange != null && !ifRange.equals(file.getEtag())) {
+			return whole;
+		}
+		List<HttpRange> ranges;
+		try {
+			ranges = HttpRange.parseRanges(request.getHeader(HttpHeaders.RANGE));
+		} catch (IllegalArgumentException e) {
+			return whole;
+		}
+		if (ranges.size() != 1) {
+			return whole;
+		}
+		HttpRange range = ranges.get(0);
+		long start = range.getRangeStart(file.getSize());
+		if (start >= file.getSize()) {
+			return null;
+		}
+		long end = range.getRangeEnd(file.getSize());
+		return new ResourceRegion(whole.getResource(), start, end - start + 1);
 	}
 
 	@PostMapping("/")
 	public String handleFileUpload(@RequestParam("file") MultipartFile file,
-								   RedirectAttributes redirectAttributes) throws IOException {
-			try (final FileUpload uploadFile = FileUpload.from(file)) {
-				binaryService.save(uploadFile);
-				storageService.store(uploadFile);
-				redirectAttributes.addFlashAttribute("message",
-						"You successfully uploaded " + uploadFile.getFilename() + "!");
-			}
-		// storageService.store(file);
-//		redirectAttributes.addFlashAttribute("message",
-//				"You successfully uploaded " + file.getOriginalFilename() + "!");
+								   RedirectAttributes redirectAttributes) {
+		IngestJob job = ingestionService.submit(FileUpload.from(file));
+		redirectAttributes.addFlashAttribute("message",
+				"You successfully uploaded " + job.getFilename() + "! Indexing job: " + job.getId());
 		return "redirect:/";
 	}
 
@@ -67,6 +144,18 @@ public class FileUploadController {
 		return ResponseEntity.notFound().build();
 	}
 
+	@ExceptionHandler(IllegalArgumentException.class)
+	public ResponseEntity<String> handleBadRequest(IllegalArgumentException exc) {
+		return ResponseEntity.badRequest().body(exc.getMessage());
+	}
+
+	@ExceptionHandler(IngestionRejectedException.class)
+	public ResponseEntity<String> handleIngestionRejected(IngestionRejectedException exc) {
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, "5")
+				.body(exc.getMessage());
+	}
+
 
 
 }
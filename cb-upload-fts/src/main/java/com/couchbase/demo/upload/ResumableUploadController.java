@@ -0,0 +1,157 @@
+package com.couchbase.demo.upload;
+
+import com.couchbase.demo.ingest.IngestJob;
+import com.couchbase.demo.ingest.IngestionRejectedException;
+import com.couchbase.demo.ingest.IngestionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Resumable uploads following the core of the tus protocol (https://tus.io/protocols/resumable-upload.html):
+ * POST creates the upload, HEAD tells the offset to resume from, PATCH appends a chunk at that offset.
+ * Once every byte is received, POST on {@code /uploads/{id}/complete} submits the file for ingestion.
+ */
+@RestController
+@RequestMapping("uploads")
+public class ResumableUploadController {
+    private static final String TUS_RESUMABLE = "Tus-Resumable";
+    private static final String TUS_VERSION = "1.0.0";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String UPLOAD_METADATA = "Upload-Metadata";
+    private static final String OFFSET_OCTET_STREAM = "application/offset+octet-stream";
+
+    private final ResumableUploadService uploadService;
+    private final IngestionService ingestionService;
+    private final ResumableUploadProperties properties;
+
+    @Autowired
+    public ResumableUploadController(ResumableUploadService uploadService, IngestionService ingestionService,
+                                     ResumableUploadProperties properties) {
+        this.uploadService = uploadService;
+        this.ingestionService = ingestionService;
+        this.properties = properties;
+    }
+
+    @RequestMapping(method = RequestMethod.OPTIONS)
+    public ResponseEntity<Void> options() {
+        return ResponseEntity.noContent()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header("Tus-Version", TUS_VERSION)
+                .header("Tus-Extension", "creation,termination")
+                .header("Tus-Max-Size", String.valueOf(properties.getMaxSize().toBytes()))
+                .build();
+    }
+
+    /**
+     * Starts an upload of {@code Upload-Length} bytes. The file name is given by the {@code filename} key of
+     * {@code Upload-Metadata}, whose values are Base64 encoded.
+     */
+    @PostMapping
+    public ResponseEntity<Void> create(@RequestHeader(UPLOAD_LENGTH) long length,
+                                       @RequestHeader(value = UPLOAD_METADATA, required = false) String metadata) {
+        UploadSession session = uploadService.create(parseMetadata(metadata).get("filename"), length);
+        return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(session.getId()).toUri())
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, "0")
+                .build();
+    }
+
+    @RequestMapping(path = "/{uploadId}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> offset(@PathVariable("uploadId") String uploadId) {
+        return uploadService.find(uploadId)
+                .map(session -> ResponseEntity.ok()
+                        .header(TUS_RESUMABLE, TUS_VERSION)
+                        .header(UPLOAD_OFFSET, String.valueOf(session.getOffset()))
+                        .header(UPLOAD_LENGTH, String.valueOf(session.getLength()))
+                        .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                        .<Void>build())
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Appends the request body at {@code Upload-Offset}. The body is read as a stream, it is neither a
+     * multipart request nor held in memory.
+     */
+    @PatchMapping(path = "/{uploadId}", consumes = OFFSET_OCTET_STREAM)
+    public ResponseEntity<Void> append(@PathVariable("uploadId") String uploadId, @RequestHeader(UPLOAD_OFFSET) long offset,
+                                       HttpServletRequest request) throws IOException {
+        return uploadService.append(uploadId, offset, request.getInputStream())
+                .map(session -> ResponseEntity.noContent()
+                        .header(TUS_RESUMABLE, TUS_VERSION)
+                        .header(UPLOAD_OFFSET, String.valueOf(session.getOffset()))
+                        .<Void>build())
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Submits the complete upload for ingestion, see {@link com.couchbase.demo.ingest.JobController}.
+     */
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<IngestJob> complete(@PathVariable("uploadId") String uploadId) {
+        Optional<FileUpload> upload = uploadService.complete(uploadId);
+        if (upload.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        IngestJob job = ingestionService.submit(upload.get());
+        uploadService.delete(uploadId);
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath().path("/jobs/{id}").buildAndExpand(job.getId()).toUri())
+                .body(job);
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> delete(@PathVariable("uploadId") String uploadId) {
+        return uploadService.delete(uploadId)
+                ? ResponseEntity.noContent().header(TUS_RESUMABLE, TUS_VERSION).build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Parses {@code key base64value} pairs separated by commas.
+     */
+    private static Map<String, String> parseMetadata(String header) {
+        Map<String, String> metadata = new HashMap<>();
+        if (header == null) {
+            return metadata;
+        }
+        for (String pair : header.split(",")) {
+            String[] keyValue = pair.trim().split(" ", 2);
+            try {
+                metadata.put(keyValue[0], keyValue.length == 1 ? "" : new String(Base64.getDecoder().decode(keyValue[1].trim()), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid " + UPLOAD_METADATA + " value for " + keyValue[0], e);
+            }
+        }
+        return metadata;
+    }
+
+    @ExceptionHandler(UploadConflictException.class)
+    public ResponseEntity<String> handleConflict(UploadConflictException exc) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).header(TUS_RESUMABLE, TUS_VERSION).body(exc.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException exc) {
+        return ResponseEntity.badRequest().header(TUS_RESUMABLE, TUS_VERSION).body(exc.getMessage());
+    }
+
+    @ExceptionHandler(IngestionRejectedException.class)
+    public ResponseEntity<String> handleRejected(IngestionRejectedException exc) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(exc.getMessage());
+    }
+}
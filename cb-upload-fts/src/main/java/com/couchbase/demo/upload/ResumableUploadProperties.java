@@ -0,0 +1,49 @@
+package com.couchbase.demo.upload;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@ConfigurationProperties("upload.resumable")
+public class ResumableUploadProperties {
+
+    /**
+     * Folder of the uploads in progress
+     */
+    private String location = "upload-sessions";
+
+    /**
+     * Largest file accepted by a resumable upload
+     */
+    private DataSize maxSize = DataSize.ofGigabytes(2);
+
+    /**
+     * Uploads without any chunk received for this long are dropped
+     */
+    private Duration expiration = Duration.ofHours(24);
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public DataSize getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(DataSize maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public Duration getExpiration() {
+        return expiration;
+    }
+
+    public void setExpiration(Duration expiration) {
+        this.expiration = expiration;
+    }
+}
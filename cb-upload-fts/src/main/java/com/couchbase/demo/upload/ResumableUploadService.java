@@ -0,0 +1,291 @@
+package com.couchbase.demo.upload;
+
+import com.couchbase.demo.storage.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Receives large files in chunks, so an interrupted upload resumes from the last byte received instead of
+ * starting over. Chunks are streamed from the request straight to the session file, never buffered whole,
+ * and hashed on the way. A session survives restarts: its file name and length are kept next to the
+ * content, and the offset is the size of the content.
+ */
+@Service
+public class ResumableUploadService {
+    private final Logger LOGGER = LoggerFactory.getLogger(ResumableUploadService.class);
+
+    private static final String CONTENT_SUFFIX = ".part";
+    private static final String INFO_SUFFIX = ".info";
+    private static final String INGEST_SUFFIX = ".ingest";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path location;
+    private final ResumableUploadProperties properties;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ResumableUploadService(ResumableUploadProperties properties) {
+        this.location = Paths.get(properties.getLocation());
+        this.properties = properties;
+    }
+
+    /**
+     * Reloads the uploads interrupted by the last shutdown, and drops the completed ones left behind by
+     * ingestions which didn't finish.
+     */
+    @PostConstruct
+    public void load() throws IOException {
+        Files.createDirectories(location);
+        try (Stream<Path> files = Files.list(location)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(INFO_SUFFIX)) {
+                    reload(file);
+                } else if (name.endsWith(INGEST_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        LOGGER.info("{} resumable uploads in progress", sessions.size());
+    }
+
+    /**
+     * Starts an upload of {@code length} bytes.
+     *
+     * @throws IllegalArgumentException when the file name or the length isn't acceptable
+     */
+    public UploadSession create(String filename, long length) {
+        purgeExpiredSessions();
+        if (filename == null || filename.isBlank()) {
+            throw new IllegalArgumentException("The file name is missing");
+        }
+        if (length <= 0 || length > properties.getMaxSize().toBytes()) {
+            throw new IllegalArgumentException("The upload length must be between 1 and " + properties.getMaxSize().toBytes() + " bytes");
+        }
+        String id = UUID.randomUUID().toString();
+        UploadSession session = new UploadSession(id, FileUpload.cleanFilename(filename), length, Instant.now(),
+                location.resolve(id + CONTENT_SUFFIX), 0);
+        try {
+            Files.createFile(session.getContent());
+            writeInfo(session);
+        } catch (IOException e) {
+            deleteFiles(id);
+            throw new StorageException("Failed to start the upload of " + filename, e);
+        }
+        session.setDigest(newDigest());
+        sessions.put(id, session);
+        return session;
+    }
+
+    public Optional<UploadSession> find(String id) {
+        return Optional.ofNullable(sessions.get(id));
+    }
+
+    /**
+     * Appends the chunk at {@code offset}, which must be the number of bytes received so far. When the
+     * stream breaks off, the bytes read until then are kept and the client resumes from the new offset.
+     *
+     * @return the session with its new offset, empty if it doesn't exist
+     * @throws UploadConflictException when the offset isn't the current one, or another chunk is being written
+     */
+    public Optional<UploadSession> append(String id, long offset, InputStream chunk) throws IOException {
+        UploadSession session = sessions.get(id);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (!session.getLock().tryLock()) {
+            throw new UploadConflictException("Another chunk of upload " + id + " is being received");
+        }
+        try {
+            if (offset != session.getOffset()) {
+                throw new UploadConflictException("Upload " + id + " is at offset " + session.getOffset() + ", not " + offset);
+            }
+            MessageDigest digest = digestOf(session);
+            long written = offset;
+            try (FileChannel channel = FileChannel.open(session.getContent(), StandardOpenOption.WRITE)) {
+                channel.position(offset);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read = chunk.read(buffer); read >= 0; read = chunk.read(buffer)) {
+                    if (written + read > session.getLength()) {
+                        throw new IllegalArgumentException("Upload " + id + " is longer than the " + session.getLength() + " bytes announced");
+                    }
+                    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    digest.update(buffer, 0, read);
+                    written += read;
+                }
+            } finally {
+                if (written != offset) {
+                    syncQuietly(session);
+                }
+                session.setOffset(written);
+            }
+            return Optional.of(session);
+        } catch (IOException | RuntimeException e) {
+            // the bytes past the acknowledged offset weren't hashed, drop them
+            truncateQuietly(session);
+            throw e;
+        } finally {
+            session.getLock().unlock();
+        }
+    }
+
+    /**
+     * Hands the content of the complete upload over as a {@link FileUpload}, which owns its own link to the
+     * file. The session stays until {@link #delete(String)}, so a completion can be retried when the
+     * ingestion of the upload was rejected.
+     *
+     * @return the upload, empty if it doesn't exist
+     * @throws UploadConflictException when bytes are still missing
+     */
+    public Optional<FileUpload> complete(String id) {
+        UploadSession session = sessions.get(id);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (!session.getLock().tryLock()) {
+            throw new UploadConflictException("Another chunk of upload " + id + " is being received");
+        }
+        try {
+            if (!session.isComplete()) {
+                throw new UploadConflictException("Upload " + id + " has " + session.getOffset() + " of " + session.getLength() + " bytes");
+            }
+            String contentHash = FileUpload.toHex(digestOf(session).digest());
+            session.setDigest(null); // digest() resets it, a retry hashes the file again
+            Path content = location.resolve(id + INGEST_SUFFIX);
+            linkOrCopy(session.getContent(), content);
+            return Optional.of(FileUpload.of(session.getFilename(), content, contentHash));
+        } catch (IOException e) {
+            throw new StorageException("Failed to complete the upload of " + session.getFilename(), e);
+        } finally {
+            session.getLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the upload and what was received of it.
+     */
+    public boolean delete(String id) {
+        UploadSession session = sessions.remove(id);
+        if (session != null) {
+            deleteFiles(id);
+        }
+        return session != null;
+    }
+
+    private MessageDigest digestOf(UploadSession session) throws IOException {
+        if (session.getDigest() == null) {
+            MessageDigest digest = newDigest();
+            try (InputStream in = Files.newInputStream(session.getContent())) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            session.setDigest(digest);
+        }
+        return session.getDigest();
+    }
+
+    private void reload(Path info) {
+        String id = info.getFileName().toString().replace(INFO_SUFFIX, "");
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(info, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            Path content = location.resolve(id + CONTENT_SUFFIX);
+            sessions.put(id, new UploadSession(id, properties.getProperty("filename"), Long.parseLong(properties.getProperty("length")),
+                    Instant.parse(properties.getProperty("createdAt")), content, Files.size(content)));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Dropping unreadable upload {}", id, e);
+            deleteFiles(id);
+        }
+    }
+
+    private void writeInfo(UploadSession session) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("filename", session.getFilename());
+        properties.setProperty("length", String.valueOf(session.getLength()));
+        properties.setProperty("createdAt", session.getCreatedAt().toString());
+        try (Writer writer = Files.newBufferedWriter(location.resolve(session.getId() + INFO_SUFFIX), StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+    }
+
+    private void purgeExpiredSessions() {
+        Instant expiration = Instant.now().minus(properties.getExpiration());
+        sessions.values().removeIf(session -> {
+            if (session.getLastActivity().isBefore(expiration) && !session.getLock().isLocked()) {
+                LOGGER.info("Upload {} of {} expired at offset {}", session.getId(), session.getFilename(), session.getOffset());
+                deleteFiles(session.getId());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(source, target);
+        }
+    }
+
+    private void syncQuietly(UploadSession session) {
+        try (FileChannel channel = FileChannel.open(session.getContent(), StandardOpenOption.WRITE)) {
+            channel.force(false); // the offset acknowledged to the client must survive a crash
+        } catch (IOException e) {
+            LOGGER.warn("Could not sync upload {}", session.getId(), e);
+        }
+    }
+
+    private void truncateQuietly(UploadSession session) {
+        try (FileChannel channel = FileChannel.open(session.getContent(), StandardOpenOption.WRITE)) {
+            channel.truncate(session.getOffset());
+        } catch (IOException e) {
+            LOGGER.warn("Could not truncate upload {}", session.getId(), e);
+        }
+    }
+
+    private void deleteFiles(String id) {
+        try {
+            Files.deleteIfExists(location.resolve(id + CONTENT_SUFFIX));
+            Files.deleteIfExists(location.resolve(id + INFO_SUFFIX));
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete the files of upload {}", id, e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.couchbase.demo.upload;
+
+public class UploadConflictException extends RuntimeException {
+
+    public UploadConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,54 @@
+package com.couchbase.demo.upload;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A resumable upload in progress. The bytes received so far are in {@link #getContent()}, whose size is the
+ * current offset, and their hash is updated chunk by chunk.
+ */
+@Getter
+public class UploadSession {
+    private final String id;
+    private final String filename;
+    private final long length;
+    private final Instant createdAt;
+    private final Path content;
+    private volatile long offset;
+    private volatile Instant lastActivity;
+    /**
+     * Hash of the first {@code offset} bytes, null until computed again after a restart
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private MessageDigest digest;
+    @Getter(AccessLevel.PACKAGE)
+    private final ReentrantLock lock = new ReentrantLock();
+
+    UploadSession(String id, String filename, long length, Instant createdAt, Path content, long offset) {
+        this.id = id;
+        this.filename = filename;
+        this.length = length;
+        this.createdAt = createdAt;
+        this.content = content;
+        this.offset = offset;
+        this.lastActivity = Instant.now();
+    }
+
+    public boolean isComplete() {
+        return offset == length;
+    }
+
+    void setOffset(long offset) {
+        this.offset = offset;
+        this.lastActivity = Instant.now();
+    }
+
+    void setDigest(MessageDigest digest) {
+        this.digest = digest;
+    }
+}
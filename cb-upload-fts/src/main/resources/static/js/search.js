@@ -1,7 +1,14 @@
+// picked facet values by facet name, sent as search filters
+let filters = {};
+
+const FACET_TITLES = { docType: "Type", author: "Author", registeredAt: "Registered" };
+const PERIOD_TITLES = { day: "Last 24 hours", week: "Last week", month: "Last month", year: "Last year", older: "Older" };
+
 $(document).ready(function() {
     $(document).on('submit', '#search_form', function() {
         // do your things
         try {
+            filters = {};
             submit_search();
         } catch (e) {
           console.error(e);
@@ -22,7 +29,7 @@ async function submit_search() {
             headers: {
                 'Content-Type': 'application/json;charset=utf-8'
             },
-            body: input
+            body: JSON.stringify({query: input, filters: filters})
         });
 
         let data = await response.json();
@@ -47,6 +54,7 @@ function display(data) {
     let header = document.getElementById("header-display");
 
     display_header(header, searchTerms, total);
+    display_facets(document.getElementById("facets"), data.facets || {});
     display_grid(grid, results);
     content.hidden=false; // show results
 
@@ -56,6 +64,35 @@ function display_header(header, searchTerms, total) {
     header.innerHTML = "<strong class=\"text-danger\">"+total+"</strong> results were found for the search for <strong class=\"text-danger\">"+searchTerms+"</strong>";
 }
 
+function display_facets(aside, facets) {
+    aside.innerHTML = "";
+    Object.keys(FACET_TITLES).filter(name => facets[name]).forEach(name => {
+        const title = document.createElement("h6");
+        title.textContent = FACET_TITLES[name];
+        aside.appendChild(title);
+        const list = document.createElement("ul");
+        list.className = "list-unstyled";
+        facets[name].buckets.filter(bucket => bucket.count > 0).forEach(bucket => {
+            const picked = (filters[name] || []).includes(bucket.name);
+            const item = document.createElement("li");
+            const link = document.createElement("a");
+            link.href = "#";
+            link.className = picked ? "font-weight-bold" : "";
+            link.textContent = (name === "registeredAt" ? PERIOD_TITLES[bucket.name] : bucket.name) + " (" + bucket.count + ")";
+            link.onclick = () => { toggle_filter(name, bucket.name); return false; };
+            item.appendChild(link);
+            list.appendChild(item);
+        });
+        aside.appendChild(list);
+    });
+}
+
+function toggle_filter(name, value) {
+    const values = filters[name] || [];
+    filters[name] = values.includes(value) ? values.filter(v => v !== value) : values.concat([value]);
+    submit_search();
+}
+
 function display_grid(grid, data) {
     // clear previous result list
     grid.innerHTML = "";
@@ -74,7 +111,7 @@ function addArticule(grid, item) {
     const time = new Date(item.registeredAt).toLocaleTimeString();
     const tags = item.tags|| '--';
     const author = item.author || 'unknown';
-    const image = "images/"+(item.thumbnail || 'pdf.jpg');
+    const image = "binaries/"+encodeURIComponent(id)+"/thumbnail";
     const reference = "files/"+item.reference;
     const htmlToElement = html => {
         const placeholder = document.createElement('div');